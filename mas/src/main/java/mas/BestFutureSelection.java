@@ -1,10 +1,16 @@
 package mas;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 
 import com.google.common.base.Optional;
 
@@ -29,8 +35,17 @@ public class BestFutureSelection implements SelectStrategy {
 	 * location/destination of a parcel.
 	 */
 	private double punctuality;
+	private int parallelThreshold = Integer.MAX_VALUE;
+	private boolean bounded = false;
+	private boolean sampledBackers = false;
 
-	private double currentFutureValue = Double.MIN_VALUE;
+	/**
+	 * Value of the current future of each vehicle, the strategy is shared by
+	 * the whole fleet and may be called from several threads. The vehicles of
+	 * finished simulations drop out with the weak keys.
+	 */
+	private final Map<SmartVehicle, Double> currentFutureValues = Collections
+			.synchronizedMap(new WeakHashMap<SmartVehicle, Double>());
 
 	public BestFutureSelection() {
 		this.nrConsideredFutures = 10;
@@ -47,63 +62,102 @@ public class BestFutureSelection implements SelectStrategy {
 		this.punctuality = punctuality;
 	}
 
+	/**
+	 * Above this many cost evaluations per selection, the future candidates
+	 * are scored in parallel.
+	 */
+	public BestFutureSelection withParallelThreshold(int work) {
+		parallelThreshold = work;
+		return this;
+	}
+
+	/**
+	 * Back every future with a seeded sample of nrFutureBackers of this
+	 * vehicle's own bids. Without it no future is backed and all of them
+	 * score zero, as the strategy always did, so the first candidate wins.
+	 */
+	public BestFutureSelection withSampledBackers() {
+		sampledBackers = true;
+		return this;
+	}
+
+	/**
+	 * Stop scoring a candidate as soon as the upper bounds of the value
+	 * strategy show it cannot beat the best one so far. The selected parcel
+	 * stays the same.
+	 */
+	public BestFutureSelection withBoundedScoring() {
+		bounded = true;
+		return this;
+	}
+
 	@Override
 	public Parcel parcel(SmartVehicle thisVehicle, PDPModel pm, RoadModel rm,
 			TimeLapse time, Optional<Parcel> curr, BidStore commBids, long seed) {
 		BidMessage future = null;
+		Double previous = currentFutureValues.get(thisVehicle);
+		double currentFutureValue = previous == null ? Double.MIN_VALUE
+				: previous;
 		double cumulativeFutureCost = Double.NEGATIVE_INFINITY;
 
-		List<BidMessage> backers = new LinkedList<BidMessage>();
-		Collections
-				.shuffle(
-						new LinkedList<BidMessage>(commBids
-								.senderMessages(thisVehicle)), new Random(seed));
-		backers = backers.subList(0, Math.min(nrFutureBackers, backers.size()));
+		List<BidMessage> backers = Collections.emptyList();
+		if (sampledBackers) {
+			backers = new ArrayList<BidMessage>(
+					commBids.senderMessages(thisVehicle));
+			Collections.shuffle(backers, new Random(seed));
+			backers = backers.subList(0,
+					Math.min(nrFutureBackers, backers.size()));
+		}
 
 		LinkedList<BidMessage> futureCandidates = commBids.futures(thisVehicle,
 				nrConsideredFutures);
 		// commBids.futures returns a list sorted from highest to lowest bid
 		BidMessage smallest = futureCandidates.peekLast();
-		for (Parcel p : pm.getContents(thisVehicle)) {
-			double pCost = thisVehicle.cost(pm, rm, time,
-					thisVehicle.getPosition(), pm.getContents(thisVehicle), p);
-			if (smallest == null || pCost > smallest.getBid()) {
+		Set<Parcel> contents = pm.getContents(thisVehicle);
+		Parcel[] parcels = contents.toArray(new Parcel[Math.max(
+				contents.size(), backers.size())]);
+		double[] values = new double[parcels.length];
+		thisVehicle.costAll(pm, rm, time, thisVehicle.getPosition(), contents,
+				parcels, contents.size(), values);
+		for (int i = 0; i < contents.size(); i++) {
+			if (smallest == null || values[i] > smallest.getBid()) {
 				futureCandidates.offer(thisVehicle.new BidMessage(thisVehicle,
-						p, pCost, thisVehicle.TTL, thisVehicle.getPosition()));
+						parcels[i], values[i], thisVehicle.TTL, thisVehicle
+								.getPosition()));
 			}
 		}
-		for (BidMessage futureCandidate : futureCandidates) {
-			Point futurePosition;
-			List<Parcel> cargo = new LinkedList<Parcel>(
-					pm.getContents(thisVehicle));
-			Parcel candidateParcel = futureCandidate.getParcel();
-			if (pm.containerContains(thisVehicle, candidateParcel)) {
-				futurePosition = candidateParcel.getDestination();
-			} else {
-				futurePosition = futureCandidate.getPosition();
-				cargo.add(candidateParcel);
-			}
-
-			double cumSum = 0;
-			for (BidMessage backer : backers) {
-				cumSum += thisVehicle.cost(pm, rm, time, futurePosition, cargo,
-						backer.getParcel());
-			}
-			if (cumSum > cumulativeFutureCost) {
-				cumulativeFutureCost = cumSum;
-				future = futureCandidate;
-			}
-
+		// From here on parcels holds the parcels of the backers.
+		for (int i = 0; i < backers.size(); i++) {
+			parcels[i] = backers.get(i).getParcel();
+		}
+		List<BidMessage> candidates = new ArrayList<BidMessage>(
+				futureCandidates);
+		double[] sums = new double[candidates.size()];
+		if (bounded)
+			scoreBounded(thisVehicle, pm, rm, time, candidates, parcels,
+					backers.size(), sums);
+		else if (candidates.size() > 1
+				&& candidates.size() * backers.size() >= parallelThreshold
+				&& !thisVehicle.cachesCosts() && !Workers.isWorker())
+			scoreParallel(thisVehicle, pm, rm, time, candidates, parcels,
+					backers.size(), sums);
+		else
+			score(thisVehicle, pm, rm, time, candidates, 0, candidates.size(),
+					parcels, backers.size(), values, sums);
+		int best = best(sums);
+		if (best >= 0) {
+			cumulativeFutureCost = sums[best];
+			future = candidates.get(best);
 		}
 		Parcel parcel = null;
 		if (curr.isPresent()) {
 			for (BidMessage bid : commBids.senderMessages(thisVehicle)) {
 				if (bid.getParcel().equals(curr.get())) {
+					thisVehicle.costAll(pm, rm, time, bid.getPosition(),
+							contents, parcels, backers.size(), values);
 					currentFutureValue = 0;
-					for (BidMessage backer : backers) {
-						currentFutureValue += thisVehicle.cost(pm, rm, time,
-								bid.getPosition(), pm.getContents(thisVehicle),
-								backer.getParcel());
+					for (int i = 0; i < backers.size(); i++) {
+						currentFutureValue += values[i];
 					}
 					parcel = curr.get();
 					break;
@@ -117,6 +171,7 @@ public class BestFutureSelection implements SelectStrategy {
 			currentFutureValue = cumulativeFutureCost;
 			parcel = future.getParcel();
 		}
+		currentFutureValues.put(thisVehicle, currentFutureValue);
 
 		if (parcel == null) {
 			if (pm.getContents(thisVehicle).isEmpty()
@@ -170,4 +225,167 @@ public class BestFutureSelection implements SelectStrategy {
 		return parcel;
 	}
 
+	/**
+	 * The index of the first of the highest sums, whichever thread computed
+	 * them, or -1 when no sum is above negative infinity.
+	 */
+	static int best(double[] sums) {
+		int best = -1;
+		double bestSum = Double.NEGATIVE_INFINITY;
+		for (int j = 0; j < sums.length; j++) {
+			if (sums[j] > bestSum) {
+				bestSum = sums[j];
+				best = j;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Sum for candidates from up to to the costs of the backers from the
+	 * future position of the candidate, into sums.
+	 */
+	void score(SmartVehicle thisVehicle, PDPModel pm, RoadModel rm,
+			TimeLapse time, List<BidMessage> candidates, int from, int to,
+			Parcel[] backers, int nrBackers, double[] values, double[] sums) {
+		for (int j = from; j < to; j++) {
+			BidMessage futureCandidate = candidates.get(j);
+			Point futurePosition;
+			List<Parcel> cargo = new LinkedList<Parcel>(
+					pm.getContents(thisVehicle));
+			Parcel candidateParcel = futureCandidate.getParcel();
+			if (pm.containerContains(thisVehicle, candidateParcel)) {
+				futurePosition = candidateParcel.getDestination();
+			} else {
+				futurePosition = futureCandidate.getPosition();
+				cargo.add(candidateParcel);
+			}
+
+			thisVehicle.costAll(pm, rm, time, futurePosition, cargo, backers,
+					nrBackers, values);
+			double cumSum = 0;
+			for (int i = 0; i < nrBackers; i++) {
+				cumSum += values[i];
+			}
+			sums[j] = cumSum;
+		}
+	}
+
+	/**
+	 * Score the candidates with the highest bound first and give up on a
+	 * candidate as soon as its sum so far plus the bounds of the remaining
+	 * backers falls below the best sum. The bound is widened by the worst
+	 * case rounding error of the summation, so a candidate that could still
+	 * tie is always completed. Abandoned candidates get negative infinity,
+	 * which leaves the first best candidate the same as with score.
+	 * <p>
+	 * The future cargo of a candidate is the current cargo, plus the
+	 * candidate when it still has to be picked up. Bounds only depend on the
+	 * size of the cargo, so each backer is bounded at most once for each of
+	 * the two sizes.
+	 */
+	private void scoreBounded(SmartVehicle thisVehicle, PDPModel pm,
+			RoadModel rm, TimeLapse time, final List<BidMessage> candidates,
+			Parcel[] backers, int nrBackers, double[] sums) {
+		int n = candidates.size();
+		Set<Parcel> contents = pm.getContents(thisVehicle);
+		Point[] positions = new Point[n];
+		List<List<Parcel>> cargos = new ArrayList<List<Parcel>>(n);
+		// remaining[s][k] bounds the sum of the backers from k on, for a
+		// cargo of contents.size() + s parcels.
+		final double[][] remaining = new double[2][];
+		final int[] extra = new int[n];
+		long bounds = 0;
+		for (int j = 0; j < n; j++) {
+			BidMessage futureCandidate = candidates.get(j);
+			List<Parcel> cargo = new LinkedList<Parcel>(contents);
+			Parcel candidateParcel = futureCandidate.getParcel();
+			if (pm.containerContains(thisVehicle, candidateParcel)) {
+				positions[j] = candidateParcel.getDestination();
+			} else {
+				positions[j] = futureCandidate.getPosition();
+				cargo.add(candidateParcel);
+				extra[j] = 1;
+			}
+			cargos.add(cargo);
+			if (remaining[extra[j]] != null)
+				continue;
+			double[] suffix = new double[nrBackers + 1];
+			for (int k = nrBackers - 1; k >= 0; k--) {
+				double bound = thisVehicle.costBound(pm, time, contents.size()
+						+ extra[j], backers[k]);
+				bounds++;
+				if (!(bound >= 0)) {
+					// Broken contract, score without pruning.
+					score(thisVehicle, pm, rm, time, candidates, 0, n,
+							backers, nrBackers, new double[nrBackers], sums);
+					thisVehicle.getStatistics().recordPruned(0, bounds);
+					return;
+				}
+				suffix[k] = suffix[k + 1] + bound;
+			}
+			remaining[extra[j]] = suffix;
+		}
+		Integer[] order = new Integer[n];
+		for (int j = 0; j < n; j++) {
+			order[j] = j;
+		}
+		// Stable, equal bounds keep the candidate order.
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(remaining[extra[o2]][0],
+						remaining[extra[o1]][0]);
+			}
+		});
+
+		double slack = 1 + 2 * (nrBackers + 1) * Math.ulp(1.0);
+		double best = Double.NEGATIVE_INFINITY;
+		long pruned = 0;
+		for (int j : order) {
+			double[] suffix = remaining[extra[j]];
+			double cumSum = 0;
+			int k = 0;
+			while (k < nrBackers && (cumSum + suffix[k]) * slack >= best) {
+				cumSum += thisVehicle.cost(pm, rm, time, positions[j],
+						cargos.get(j), backers[k]);
+				k++;
+			}
+			if (k < nrBackers) {
+				pruned += nrBackers - k;
+				sums[j] = Double.NEGATIVE_INFINITY;
+				continue;
+			}
+			sums[j] = cumSum;
+			if (cumSum > best)
+				best = cumSum;
+		}
+		thisVehicle.getStatistics().recordPruned(pruned, bounds);
+	}
+
+	/**
+	 * Score contiguous slices of the candidates on the shared workers. Every
+	 * sum is computed exactly as score does, so the result is the same. Not
+	 * used when the vehicle already decides on a worker, see ParallelTicker.
+	 */
+	void scoreParallel(final SmartVehicle thisVehicle,
+			final PDPModel pm, final RoadModel rm, final TimeLapse time,
+			final List<BidMessage> candidates, final Parcel[] backers,
+			final int nrBackers, final double[] sums) {
+		int slice = (candidates.size() + Workers.size() - 1) / Workers.size();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int from = 0; from < candidates.size(); from += slice) {
+			final int begin = from;
+			final int end = Math.min(from + slice, candidates.size());
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					score(thisVehicle, pm, rm, time, candidates, begin, end,
+							backers, nrBackers, new double[nrBackers], sums);
+					return null;
+				}
+			});
+		}
+		Workers.invokeAll(tasks);
+	}
 }
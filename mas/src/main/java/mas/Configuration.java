@@ -4,7 +4,6 @@ import org.apache.commons.math3.random.MersenneTwister;
 
 import rinde.sim.core.Simulator;
 import rinde.sim.core.model.Model;
-import rinde.sim.core.model.communication.CommunicationModel2;
 import rinde.sim.pdptw.common.AddParcelEvent;
 import rinde.sim.pdptw.common.AddVehicleEvent;
 import rinde.sim.pdptw.common.DefaultParcel;
@@ -19,19 +18,58 @@ import com.google.common.collect.ImmutableList;
 public class Configuration extends DefaultMASConfiguration {
 
 	private ExperimentParameters params;
+	private final SmartTuning tuning;
+	private final SmartStatistics stats = new SmartStatistics();
 
 	public Configuration(ExperimentParameters params) {
+		this(params, params.tuning);
+	}
+
+	/**
+	 * The experiment of params, run with different tuning.
+	 */
+	Configuration(ExperimentParameters params, SmartTuning tuning) {
 		this.params = params;
+		this.tuning = tuning;
 	}
 
 	@Override
 	public ImmutableList<? extends SupplierRng<? extends Model<?>>> getModels() {
-		return ImmutableList.of(new DefaultSupplierRng<CommunicationModel2>() {
-			@Override
-			public CommunicationModel2 get(long seed) {
-				return new CommunicationModel2(new MersenneTwister(seed));
-			}
-		});
+		return ImmutableList.<SupplierRng<? extends Model<?>>> of(
+				new DefaultSupplierRng<LocalCommunicationModel>() {
+					@Override
+					public LocalCommunicationModel get(long seed) {
+						return new LocalCommunicationModel(new MersenneTwister(
+								seed), params.commRadius);
+					}
+				}, new DefaultSupplierRng<RandomStreams>() {
+					@Override
+					public RandomStreams get(long seed) {
+						return new RandomStreams(seed);
+					}
+				}, new DefaultSupplierRng<ParallelTicker>() {
+					@Override
+					public ParallelTicker get(long seed) {
+						return new ParallelTicker(tuning.parallelTicks,
+								stats);
+					}
+				}, new DefaultSupplierRng<ParcelGrid>() {
+					@Override
+					public ParcelGrid get(long seed) {
+						return new ParcelGrid(params.commRadius);
+					}
+				}, new DefaultSupplierRng<ParcelRegistry>() {
+					@Override
+					public ParcelRegistry get(long seed) {
+						return new ParcelRegistry();
+					}
+				}, new DefaultSupplierRng<ContactGraph>() {
+					@Override
+					public ContactGraph get(long seed) {
+						return new ContactGraph(tuning.contactLog == null ? null
+								: tuning.contactLog + "-" + seed + ".csv");
+					}
+				});
 	}
 
 	@Override
@@ -39,8 +77,12 @@ public class Configuration extends DefaultMASConfiguration {
 		return Optional.of(new Creator<AddParcelEvent>() {
 			@Override
 			public boolean create(Simulator sim, AddParcelEvent event) {
+				DefaultParcel parcel = new DefaultParcel(event.parcelDTO);
+				ParcelRegistry registry = sim.getModelProvider().getModel(
+						ParcelRegistry.class);
+				registry.add(parcel, event.parcelDTO);
 				// all parcels are accepted by default
-				return sim.register(new DefaultParcel(event.parcelDTO));
+				return sim.register(parcel);
 			}
 		});
 	}
@@ -57,7 +99,8 @@ public class Configuration extends DefaultMASConfiguration {
 							params.commRadius, params.commReliability,
 							params.timeToLive,
 							params.randomMovementScalingfactor,
-							params.roadUserInfluenceOnRandomWalk));
+							params.roadUserInfluenceOnRandomWalk, tuning,
+							stats));
 				}
 			};
 		else if (ExperimentParameters.GREEDY.name().equals(params.name()))
@@ -79,6 +122,10 @@ public class Configuration extends DefaultMASConfiguration {
 		return creator;
 	}
 
+	public SmartStatistics getStatistics() {
+		return stats;
+	}
+
 	@Override
 	public String toString() {
 		return params.toString();
@@ -93,6 +140,8 @@ public class Configuration extends DefaultMASConfiguration {
 				0.5, 0.8, 5, 0.5, 0.03),
 		BESTFUTURE_TRIVIAL(true, new BestFutureSelection(),
 				new TrivialValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
+		PLANNING_SIMPLE(true, new PlanningSelection(),
+				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
 //		BESTFUTURE_SIMPLE_LCommR_LRUI(true, new BestFutureSelection(),
 //				new SimpleValueStrategy(), 0.2, 0.8, 5, 0.5, 0.02),
 //		BESTFUTURE_SIMPLE_MCommR_LRUI(true, new BestFutureSelection(),
@@ -103,6 +152,28 @@ public class Configuration extends DefaultMASConfiguration {
 //				new SimpleValueStrategy(), 0.2, 0.8, 5, 0.5, 0.03),
 		BESTFUTURE_SIMPLE_Defaults(true, new BestFutureSelection(),
 				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
+		BESTFUTURE_SIMPLE_Incremental(true, new BestFutureSelection(),
+				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03,
+				new SmartTuning().withRebidDisplacement(0.05)),
+//		BESTFUTURE_SIMPLE_Backed(true,
+//				new BestFutureSelection().withSampledBackers(),
+//				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
+//		BESTFUTURE_SIMPLE_Bounded(true, new BestFutureSelection(),
+//				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03,
+//				new SmartTuning().withStoreCapacity(50,
+//						EvictionPolicy.CLOSED_WINDOW)),
+//		BESTFUTURE_SIMPLE_Bundles(true, new BestFutureSelection(),
+//				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03,
+//				new SmartTuning().withBundleSize(8)),
+//		BESTFUTURE_SIMPLE_DeltaSync(true, new BestFutureSelection(),
+//				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03,
+//				new SmartTuning().withDeltaSync()),
+//		BESTFUTURE_SIMPLE_Parallel(true, new BestFutureSelection(),
+//				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03,
+//				new SmartTuning().withParallelTicks(4)),
+//		BESTFUTURE_SIMPLE_CostCache(true, new BestFutureSelection(),
+//				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03,
+//				new SmartTuning().withCostCache(4096, 0.01, 60000)),
 //		BESTFUTURE_SIMPLE_HCommR_MRUI(true, new BestFutureSelection(),
 //				new SimpleValueStrategy(), 1, 0.8, 5, 0.5, 0.03),
 //		BESTFUTURE_SIMPLE_LCommR_HRUI(true, new BestFutureSelection(),
@@ -121,6 +192,12 @@ public class Configuration extends DefaultMASConfiguration {
 //				0.1), new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
 //		BESTFUTURE_SIMPLE_Hfutures(true, new BestFutureSelection(20, 20, 1.1,
 //				0.1), new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
+//		BESTFUTURE_SIMPLE_Hfutures_Parallel(true, new BestFutureSelection(20,
+//				20, 1.1, 0.1).withSampledBackers().withParallelThreshold(200),
+//				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
+//		BESTFUTURE_SIMPLE_Hfutures_Bounded(true, new BestFutureSelection(20,
+//				20, 1.1, 0.1).withSampledBackers().withBoundedScoring(),
+//				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
 //		BESTFUTURE_SIMPLE_Linertia(true,
 //				new BestFutureSelection(10, 42, 1, 0.1),
 //				new SimpleValueStrategy(), 0.5, 0.8, 5, 0.5, 0.03),
@@ -140,12 +217,23 @@ public class Configuration extends DefaultMASConfiguration {
 		public int timeToLive;
 		public double randomMovementScalingfactor;
 		public double roadUserInfluenceOnRandomWalk;
+		public SmartTuning tuning;
 
 		private ExperimentParameters(boolean smart,
 				SelectStrategy selectStrategy, ValueStrategy valueStrategy,
 				double commRadius, double commReliability, int timeToLive,
 				double randomMovementScalingfactor,
 				double roadUserInfluenceOnRandomWalk) {
+			this(smart, selectStrategy, valueStrategy, commRadius,
+					commReliability, timeToLive, randomMovementScalingfactor,
+					roadUserInfluenceOnRandomWalk, new SmartTuning());
+		}
+
+		private ExperimentParameters(boolean smart,
+				SelectStrategy selectStrategy, ValueStrategy valueStrategy,
+				double commRadius, double commReliability, int timeToLive,
+				double randomMovementScalingfactor,
+				double roadUserInfluenceOnRandomWalk, SmartTuning tuning) {
 			this.smart = smart;
 			this.selectStrategy = selectStrategy;
 			this.valueStrategy = valueStrategy;
@@ -154,7 +242,7 @@ public class Configuration extends DefaultMASConfiguration {
 			this.timeToLive = timeToLive;
 			this.randomMovementScalingfactor = randomMovementScalingfactor;
 			this.roadUserInfluenceOnRandomWalk = roadUserInfluenceOnRandomWalk;
-
+			this.tuning = tuning;
 		}
 
 		@Override
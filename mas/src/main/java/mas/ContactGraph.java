@@ -0,0 +1,94 @@
+package mas;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import rinde.sim.core.TickListener;
+import rinde.sim.core.TimeLapse;
+import rinde.sim.core.model.Model;
+
+/**
+ * Records the communication topology of the whole fleet. Every time a vehicle
+ * reaches another vehicle it had no recent contact with, an edge event
+ * "time,from,to" is appended to the log file, vehicles are numbered in
+ * registration order. Events are buffered and written after each tick.
+ */
+public class ContactGraph implements Model<SmartVehicle>, TickListener {
+
+	@Nullable
+	private final String fileName;
+	private final Map<SmartVehicle, Integer> ids = new IdentityHashMap<SmartVehicle, Integer>();
+	private final StringBuilder buffer = new StringBuilder();
+	private long time;
+
+	/**
+	 * @param fileName
+	 *            The log to append edge events to, null to not log them.
+	 */
+	public ContactGraph(@Nullable String fileName) {
+		this.fileName = fileName;
+	}
+
+	public void contact(SmartVehicle from, SmartVehicle to) {
+		if (fileName != null)
+			buffer.append(time).append(',').append(id(from)).append(',')
+					.append(id(to)).append('\n');
+	}
+
+	private int id(SmartVehicle vehicle) {
+		Integer id = ids.get(vehicle);
+		if (id == null) {
+			id = ids.size();
+			ids.put(vehicle, id);
+		}
+		return id;
+	}
+
+	@Override
+	public void tick(TimeLapse timeLapse) {
+		time = timeLapse.getStartTime();
+	}
+
+	@Override
+	public void afterTick(TimeLapse timeLapse) {
+		if (buffer.length() == 0)
+			return;
+		FileWriter output = null;
+		try {
+			output = new FileWriter(fileName, true);
+			output.append(buffer);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (output != null) {
+				try {
+					output.close();
+				} catch (IOException e) {
+					// Ignore issues during closing
+				}
+			}
+		}
+		buffer.setLength(0);
+	}
+
+	@Override
+	public boolean register(SmartVehicle vehicle) {
+		id(vehicle);
+		vehicle.setContactGraph(this);
+		return true;
+	}
+
+	@Override
+	public boolean unregister(SmartVehicle vehicle) {
+		return false;
+	}
+
+	@Override
+	public Class<SmartVehicle> getSupportedType() {
+		return SmartVehicle.class;
+	}
+}
@@ -0,0 +1,138 @@
+package mas;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.pdp.Parcel;
+
+/**
+ * Bounded cache of the cost evaluations of one vehicle, the least recently
+ * used value is dropped when it is full. Evaluations are keyed on the
+ * position rounded to positionQuantum, the cargo, the parcel and the time
+ * rounded down to timeBucket. Everything is cleared when the cargo of the
+ * vehicle itself changes, since costs depend on what it is carrying.
+ */
+class CostCache {
+
+	private final int capacity;
+	private final double positionQuantum;
+	private final long timeBucket;
+	private final SmartStatistics stats;
+	private final Map<Key, Double> values;
+	private long cargo;
+
+	/**
+	 * @param capacity
+	 *            Maximum number of cached costs, zero disables the cache.
+	 * @param positionQuantum
+	 *            Size of the cells positions are rounded to, zero to only
+	 *            reuse costs for exactly the same position.
+	 * @param timeBucket
+	 *            Length of the intervals time is rounded to in ms, zero to
+	 *            only reuse costs within the same instant.
+	 */
+	CostCache(final int capacity, double positionQuantum, long timeBucket,
+			SmartStatistics stats) {
+		this.capacity = capacity;
+		this.positionQuantum = positionQuantum;
+		this.timeBucket = timeBucket;
+		this.stats = stats;
+		this.values = new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	Key key(Point position, long cargo, int parcel, long time) {
+		long x, y;
+		if (positionQuantum > 0) {
+			x = (long) Math.floor(position.x / positionQuantum);
+			y = (long) Math.floor(position.y / positionQuantum);
+		} else {
+			x = Double.doubleToLongBits(position.x);
+			y = Double.doubleToLongBits(position.y);
+		}
+		return new Key(x, y, cargo, parcel, timeBucket > 0 ? time
+				/ timeBucket : time);
+	}
+
+	/**
+	 * @return The cached cost or null.
+	 */
+	Double get(Key key) {
+		Double value = values.get(key);
+		stats.recordCostLookup(value != null);
+		return value;
+	}
+
+	void put(Key key, double value) {
+		values.put(key, value);
+	}
+
+	/**
+	 * Clear the cache when the signature of the vehicle's own cargo differs
+	 * from the last one seen.
+	 */
+	void ownCargo(long signature) {
+		if (signature != cargo) {
+			values.clear();
+			cargo = signature;
+		}
+	}
+
+	/**
+	 * Order independent signature of a set of parcels.
+	 */
+	static long signature(Collection<Parcel> parcels, ParcelRegistry registry) {
+		long signature = parcels.size();
+		for (Parcel parcel : parcels) {
+			long z = (registry.id(parcel) + 1) * 0x9E3779B97F4A7C15L;
+			signature += z ^ (z >>> 31);
+		}
+		return signature;
+	}
+
+	static final class Key {
+		private final long x;
+		private final long y;
+		private final long cargo;
+		private final int parcel;
+		private final long time;
+
+		private Key(long x, long y, long cargo, int parcel, long time) {
+			this.x = x;
+			this.y = y;
+			this.cargo = cargo;
+			this.parcel = parcel;
+			this.time = time;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return x == other.x && y == other.y && cargo == other.cargo
+					&& parcel == other.parcel && time == other.time;
+		}
+
+		@Override
+		public int hashCode() {
+			long h = x * 31 + y;
+			h = h * 31 + cargo;
+			h = h * 31 + parcel;
+			h = h * 31 + time;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
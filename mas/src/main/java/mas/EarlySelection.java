@@ -1,5 +1,7 @@
 package mas;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import mas.SmartVehicle.BidMessage;
@@ -18,11 +20,12 @@ public class EarlySelection implements SelectStrategy {
 			TimeLapse time, Optional<Parcel> curr, BidStore commBids, long seed) {
 		Parcel parcel = null;
 		long parcelEndTime = Long.MAX_VALUE;
+		List<BidMessage> gone = new ArrayList<BidMessage>();
 		for (BidMessage bid : commBids.senderMessages(thisVehicle)) {
 			boolean inCargo = pm
 					.containerContains(thisVehicle, bid.getParcel());
 			if (!inCargo && !rm.containsObject(bid.getParcel())) {
-				commBids.purge(bid);
+				gone.add(bid);
 			} else if (inCargo
 					&& bid.getParcel().getDeliveryTimeWindow().end < parcelEndTime) {
 				// Bug introduced when adding the 'vanishing' to the smart agent:
@@ -36,6 +39,9 @@ public class EarlySelection implements SelectStrategy {
 				parcelEndTime = parcel.getPickupTimeWindow().end;
 			}
 		}
+		for (BidMessage bid : gone) {
+			commBids.purge(bid);
+		}
 		if (parcel == null) {
 			Set<Parcel> cargo = pm.getContents(thisVehicle);
 			for (Parcel p : cargo) {
@@ -0,0 +1,25 @@
+package mas;
+
+/**
+ * Which bid a full BidStore drops to make room for a new one, see
+ * SmartTuning.storeCapacity.
+ */
+public enum EvictionPolicy {
+	/**
+	 * The bid with the lowest value, the one least likely to be selected.
+	 */
+	LOWEST_VALUE,
+	/**
+	 * The bid that was stored or updated longest ago.
+	 */
+	OLDEST,
+	/**
+	 * The bid on the parcel farthest from the vehicle.
+	 */
+	FARTHEST,
+	/**
+	 * A bid on a parcel whose pickup window has closed, otherwise the lowest
+	 * value.
+	 */
+	CLOSED_WINDOW
+}
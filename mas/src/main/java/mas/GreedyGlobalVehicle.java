@@ -18,8 +18,9 @@ import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 
-class GreedyGlobalVehicle extends DefaultVehicle {
+class GreedyGlobalVehicle extends DefaultVehicle implements ParcelGrid.User {
 	Optional<Parcel> curr = Optional.absent();
+	private ParcelGrid parcelGrid;
 
 	public GreedyGlobalVehicle(VehicleDTO pDto) {
 		super(pDto);
@@ -49,12 +50,16 @@ class GreedyGlobalVehicle extends DefaultVehicle {
 		if (!curr.isPresent()) {
 			Parcel parcel = null;
 			/*
-			 * If there are still parcels on the rm, look at the 20 closest and
-			 * take the closest available parcel. If none of these is available
-			 * don't select one.
+			 * If there are still parcels on the rm, take the closest available
+			 * parcel. Without a parcel grid look at the 20 closest and if none
+			 * of these is available don't select one.
 			 */
-			if (!pm.getParcels(ParcelState.ANNOUNCED, ParcelState.AVAILABLE)
-					.isEmpty()) {
+			if (parcelGrid != null) {
+				List<Parcel> parcels = parcelGrid.nearest(rm.getPosition(this),
+						1, ParcelState.AVAILABLE);
+				parcel = parcels.isEmpty() ? null : parcels.get(0);
+			} else if (!pm.getParcels(ParcelState.ANNOUNCED,
+					ParcelState.AVAILABLE).isEmpty()) {
 				List<Parcel> parcels = RoadModels.findClosestObjects(
 						rm.getPosition(this), rm, Parcel.class, 20);
 				List<Parcel> availableParcels = new ArrayList<Parcel>(
@@ -123,6 +128,11 @@ class GreedyGlobalVehicle extends DefaultVehicle {
 		}
 	}
 
+	@Override
+	public void setParcelGrid(ParcelGrid grid) {
+		parcelGrid = grid;
+	}
+
 	@Override
 	public void initRoadPDP(RoadModel pRoadModel, PDPModel pPdpModel) {
 		roadModel = Optional.of(pRoadModel);
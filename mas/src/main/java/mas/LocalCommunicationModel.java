@@ -0,0 +1,143 @@
+package mas;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import rinde.sim.core.TickListener;
+import rinde.sim.core.TimeLapse;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.Model;
+import rinde.sim.core.model.communication.CommunicationAPI;
+import rinde.sim.core.model.communication.CommunicationUser;
+import rinde.sim.core.model.communication.Message;
+
+import com.google.common.base.Predicates;
+
+/**
+ * Communication model that only considers the users within range of the
+ * sender, found through a uniform grid with cells as large as the
+ * communication radius. A user in range receives a message with probability
+ * min(sender reliability, receiver reliability), sampled from the seeded
+ * generator of the run. Messages are delivered after the tick, like
+ * CommunicationModel2 does.
+ * <p>
+ * Positions are refreshed at the start of every tick, users that move can
+ * call update to be found at their new position straight away.
+ */
+public class LocalCommunicationModel implements Model<CommunicationUser>,
+		CommunicationAPI, TickListener {
+
+	private final RandomGenerator rng;
+	private final UniformGrid<CommunicationUser> grid;
+	private final List<CommunicationUser> users = new ArrayList<CommunicationUser>();
+	private final List<CommunicationUser> recipients = new ArrayList<CommunicationUser>();
+	private final List<Message> outbox = new ArrayList<Message>();
+
+	public LocalCommunicationModel(RandomGenerator rng, double cellSize) {
+		this.rng = rng;
+		this.grid = new UniformGrid<CommunicationUser>(cellSize);
+	}
+
+	public void update(CommunicationUser user) {
+		grid.put(user, user.getPosition());
+	}
+
+	/**
+	 * The users strictly within radius of center.
+	 */
+	public List<CommunicationUser> within(Point center, double radius) {
+		return grid.within(center, radius, Predicates.alwaysTrue());
+	}
+
+	/**
+	 * The other users within the radius of sender.
+	 */
+	public List<CommunicationUser> inRange(CommunicationUser sender) {
+		List<CommunicationUser> inRange = within(sender.getPosition(),
+				sender.getRadius());
+		inRange.remove(sender);
+		return inRange;
+	}
+
+	/**
+	 * Send message to the candidates that are reached, candidates should be
+	 * in range of the sender.
+	 * 
+	 * @return The users that will receive the message.
+	 */
+	public List<CommunicationUser> broadcast(Message message,
+			Collection<? extends CommunicationUser> candidates) {
+		List<CommunicationUser> receivers = new ArrayList<CommunicationUser>(
+				candidates.size());
+		double reliability = message.getSender().getReliability();
+		for (CommunicationUser candidate : candidates) {
+			if (rng.nextDouble() < Math.min(reliability,
+					candidate.getReliability())) {
+				recipients.add(candidate);
+				outbox.add(message);
+				receivers.add(candidate);
+			}
+		}
+		return receivers;
+	}
+
+	@Override
+	public void broadcast(Message message) {
+		broadcast(message, inRange(message.getSender()));
+	}
+
+	@Override
+	public void broadcast(Message message,
+			Class<? extends CommunicationUser> type) {
+		List<CommunicationUser> candidates = new ArrayList<CommunicationUser>();
+		for (CommunicationUser user : inRange(message.getSender())) {
+			if (type.isInstance(user))
+				candidates.add(user);
+		}
+		broadcast(message, candidates);
+	}
+
+	@Override
+	public void send(CommunicationUser recipient, Message message) {
+		if (inRange(message.getSender()).contains(recipient))
+			broadcast(message, Collections.singletonList(recipient));
+	}
+
+	@Override
+	public void tick(TimeLapse timeLapse) {
+		for (CommunicationUser user : users) {
+			update(user);
+		}
+	}
+
+	@Override
+	public void afterTick(TimeLapse timeLapse) {
+		for (int i = 0; i < outbox.size(); i++) {
+			recipients.get(i).receive(outbox.get(i));
+		}
+		recipients.clear();
+		outbox.clear();
+	}
+
+	@Override
+	public boolean register(CommunicationUser user) {
+		users.add(user);
+		user.setCommunicationAPI(this);
+		return true;
+	}
+
+	@Override
+	public boolean unregister(CommunicationUser user) {
+		grid.remove(user);
+		return users.remove(user);
+	}
+
+	@Override
+	public Class<CommunicationUser> getSupportedType() {
+		return CommunicationUser.class;
+	}
+}
@@ -4,7 +4,10 @@ import static rinde.sim.core.model.pdp.PDPModel.ParcelState.ANNOUNCED;
 import static rinde.sim.core.model.pdp.PDPModel.ParcelState.AVAILABLE;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -19,20 +22,40 @@ import rinde.sim.pdptw.common.VehicleDTO;
 
 import com.google.common.base.Optional;
 
-public abstract class LocalVehicle extends DefaultVehicle {
+public abstract class LocalVehicle extends DefaultVehicle implements
+		ParcelGrid.User {
 
-	protected static final RandomGenerator rng = new MersenneTwister(123);
+	/**
+	 * Random stream of this vehicle, replaced by RandomStreams when the
+	 * vehicle is registered.
+	 */
+	protected RandomGenerator rng = new MersenneTwister(123);
+	/**
+	 * Index of the random stream of this vehicle, unique per simulation.
+	 */
+	protected int streamIndex = 0;
 	protected Point destination;
 	protected long direction = 0;
 	protected Optional<Parcel> curr = Optional.absent();
 	protected double commRadius = 0.5;
 	protected double randomMovementScalingFactor = 0.5 * commRadius;
+	/**
+	 * Parcels that could be picked up within commRadius at the start of this
+	 * tick, see sense.
+	 */
+	protected final Set<Parcel> visibleParcels = Collections
+			.newSetFromMap(new IdentityHashMap<Parcel, Boolean>());
+	private Point sensedPosition;
+	protected ParcelGrid parcelGrid;
 
 	public LocalVehicle(VehicleDTO pDto) {
 		super(pDto);
 	}
 
 	protected Collection<Parcel> getVisibleParcels(PDPModel pm, RoadModel rm) {
+		if (parcelGrid != null)
+			return parcelGrid.within(getPosition(), commRadius, ANNOUNCED,
+					AVAILABLE);
 		Collection<Parcel> visibleParcels = RoadModels.findObjectsWithinRadius(
 				getPosition(), rm, commRadius, Parcel.class);
 		Iterator<Parcel> it = visibleParcels.iterator();
@@ -46,6 +69,25 @@ public abstract class LocalVehicle extends DefaultVehicle {
 		return visibleParcels;
 	}
 
+	/**
+	 * Take the per tick snapshot of the surroundings, call before using
+	 * visibleParcels or inRange.
+	 */
+	protected void sense(PDPModel pm, RoadModel rm) {
+		sensedPosition = getPosition();
+		visibleParcels.clear();
+		visibleParcels.addAll(getVisibleParcels(pm, rm));
+	}
+
+	/**
+	 * Whether point is strictly within commRadius of the sensed position.
+	 */
+	protected boolean inRange(Point point) {
+		double dx = point.x - sensedPosition.x;
+		double dy = point.y - sensedPosition.y;
+		return dx * dx + dy * dy < commRadius * commRadius;
+	}
+
 	protected Point pointAdd(Point p1, Point p2) {
 		return Point.diff(p1, Point.divide(p2, -1));
 	}
@@ -91,8 +133,17 @@ public abstract class LocalVehicle extends DefaultVehicle {
 		return roadModel.get().getPosition(this);
 	}
 
+	@Override
+	public void setParcelGrid(ParcelGrid grid) {
+		parcelGrid = grid;
+	}
+
 	public double getRadius() {
 		return commRadius;
 	}
 
-}
\ No newline at end of file
+	void setRandomStream(int index, RandomGenerator generator) {
+		streamIndex = index;
+		rng = generator;
+	}
+}
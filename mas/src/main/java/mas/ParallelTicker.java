@@ -0,0 +1,105 @@
+package mas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import rinde.sim.core.TickListener;
+import rinde.sim.core.TimeLapse;
+import rinde.sim.core.model.Model;
+
+/**
+ * Splits the tick of the smart vehicles in two phases. Before any vehicle
+ * ticks, this model lets the idle ones decide in parallel, while nothing moves.
+ * The vehicles then act one after the other in their usual order when they
+ * tick. The seeds for the decisions are drawn from the random stream of each
+ * vehicle beforehand, so the outcome does not depend on the number of
+ * threads. Vehicles that are picking up or delivering a parcel decide during
+ * their own tick once they are done, as they would without this model.
+ * <p>
+ * This is not the same simulation as without this model. Here every idle
+ * vehicle decides on the state at the start of the tick, while without it a
+ * vehicle sees the bids and moves of the vehicles that acted before it in
+ * the same tick. Results with one thread and with any other number of
+ * threads are the same, results with and without the model are not.
+ * <p>
+ * Register it after the communication model, which refreshes the positions
+ * the decisions read.
+ */
+public class ParallelTicker implements Model<SmartVehicle>, TickListener {
+
+	private final int threads;
+	private final SmartStatistics stats;
+	private final List<SmartVehicle> vehicles = new ArrayList<SmartVehicle>();
+
+	/**
+	 * @param threads
+	 *            Number of slices the decisions are split into, zero or less
+	 *            to leave the vehicles to tick on their own. The slices run
+	 *            on the workers shared with BestFutureSelection.
+	 */
+	public ParallelTicker(int threads, SmartStatistics stats) {
+		this.threads = threads;
+		this.stats = stats;
+	}
+
+	@Override
+	public void tick(final TimeLapse timeLapse) {
+		if (threads <= 0 || vehicles.isEmpty() || !timeLapse.hasTimeLeft())
+			return;
+		long start = System.nanoTime();
+		final List<SmartVehicle> deciding = new ArrayList<SmartVehicle>(
+				vehicles.size());
+		for (SmartVehicle vehicle : vehicles) {
+			if (vehicle.needsDecision())
+				deciding.add(vehicle);
+		}
+		final long[] seeds = new long[deciding.size()];
+		for (int i = 0; i < seeds.length; i++) {
+			seeds[i] = deciding.get(i).nextSeed();
+		}
+		if (threads == 1 || seeds.length <= 1) {
+			for (int i = 0; i < seeds.length; i++) {
+				deciding.get(i).decide(timeLapse, seeds[i]);
+			}
+		} else {
+			int chunk = (seeds.length + threads - 1) / threads;
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(threads);
+			for (int from = 0; from < seeds.length; from += chunk) {
+				final int begin = from;
+				final int end = Math.min(from + chunk, seeds.length);
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = begin; i < end; i++) {
+							deciding.get(i).decide(timeLapse, seeds[i]);
+						}
+						return null;
+					}
+				});
+			}
+			Workers.invokeAll(tasks);
+		}
+		stats.recordDecide(System.nanoTime() - start);
+	}
+
+	@Override
+	public void afterTick(TimeLapse timeLapse) {
+	}
+
+	@Override
+	public boolean register(SmartVehicle vehicle) {
+		vehicles.add(vehicle);
+		return true;
+	}
+
+	@Override
+	public boolean unregister(SmartVehicle vehicle) {
+		return vehicles.remove(vehicle);
+	}
+
+	@Override
+	public Class<SmartVehicle> getSupportedType() {
+		return SmartVehicle.class;
+	}
+}
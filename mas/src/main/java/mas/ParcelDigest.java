@@ -0,0 +1,39 @@
+package mas;
+
+import java.util.BitSet;
+
+/**
+ * Immutable set of parcel ids, used to gossip which parcels have vanished.
+ * Merging into another set costs O(words), a lookup O(1).
+ */
+public final class ParcelDigest {
+
+	public static final ParcelDigest EMPTY = new ParcelDigest(new BitSet());
+
+	private final BitSet ids;
+
+	private ParcelDigest(BitSet ids) {
+		this.ids = ids;
+	}
+
+	public static ParcelDigest of(BitSet ids) {
+		return new ParcelDigest((BitSet) ids.clone());
+	}
+
+	public boolean contains(int id) {
+		return ids.get(id);
+	}
+
+	/**
+	 * @return Whether target gained any ids.
+	 */
+	public boolean mergeInto(BitSet target) {
+		int before = target.cardinality();
+		target.or(ids);
+		return target.cardinality() != before;
+	}
+
+	public int size() {
+		return ids.cardinality();
+	}
+}
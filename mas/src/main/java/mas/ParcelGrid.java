@@ -0,0 +1,112 @@
+package mas;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.Model;
+import rinde.sim.core.model.ModelProvider;
+import rinde.sim.core.model.ModelReceiver;
+import rinde.sim.core.model.pdp.PDPModel;
+import rinde.sim.core.model.pdp.PDPModel.PDPModelEventType;
+import rinde.sim.core.model.pdp.PDPModel.ParcelState;
+import rinde.sim.core.model.pdp.PDPModelEvent;
+import rinde.sim.core.model.pdp.Parcel;
+import rinde.sim.core.model.road.RoadModel;
+import rinde.sim.core.model.road.RoadUser;
+import rinde.sim.event.Event;
+import rinde.sim.event.Listener;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Uniform grid over the parcels that are still waiting to be picked up.
+ * Parcels enter the grid when they are announced and leave it when their
+ * pickup starts. Queries filter on the current parcel state, so only the
+ * parcels near the query point have their state looked up.
+ */
+public class ParcelGrid implements Model<RoadUser>, ModelReceiver, Listener {
+
+	private final UniformGrid<Parcel> grid;
+	private RoadModel roadModel;
+	private PDPModel pdpModel;
+
+	public ParcelGrid(double cellSize) {
+		grid = new UniformGrid<Parcel>(cellSize);
+	}
+
+	/**
+	 * The parcels strictly within radius of center that are in one of the
+	 * given states, any state if none are given.
+	 */
+	public List<Parcel> within(Point center, double radius,
+			ParcelState... states) {
+		return grid.within(center, radius, inState(states));
+	}
+
+	/**
+	 * The k parcels closest to center that are in one of the given states,
+	 * any state if none are given. Closest first.
+	 */
+	public List<Parcel> nearest(Point center, int k, ParcelState... states) {
+		return grid.nearest(center, k, inState(states));
+	}
+
+	private Predicate<Parcel> inState(ParcelState... states) {
+		final Set<ParcelState> accepted = states.length == 0 ? EnumSet
+				.allOf(ParcelState.class) : EnumSet.copyOf(Arrays
+				.asList(states));
+		return new Predicate<Parcel>() {
+			@Override
+			public boolean apply(Parcel parcel) {
+				return accepted.contains(pdpModel.getParcelState(parcel));
+			}
+		};
+	}
+
+	@Override
+	public void handleEvent(Event e) {
+		grid.remove(((PDPModelEvent) e).parcel);
+	}
+
+	@Override
+	public boolean register(RoadUser element) {
+		if (element instanceof Parcel) {
+			grid.put((Parcel) element, roadModel.getPosition(element));
+			return true;
+		} else if (element instanceof User) {
+			((User) element).setParcelGrid(this);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean unregister(RoadUser element) {
+		if (element instanceof Parcel)
+			return grid.remove((Parcel) element);
+		return false;
+	}
+
+	@Override
+	public Class<RoadUser> getSupportedType() {
+		return RoadUser.class;
+	}
+
+	@Override
+	public void registerModelProvider(ModelProvider mp) {
+		roadModel = mp.getModel(RoadModel.class);
+		pdpModel = mp.getModel(PDPModel.class);
+		pdpModel.getEventAPI().addListener(this,
+				PDPModelEventType.START_PICKUP);
+	}
+
+	/**
+	 * Vehicles that query the grid are handed it when they are registered.
+	 */
+	public interface User {
+		void setParcelGrid(ParcelGrid grid);
+	}
+}
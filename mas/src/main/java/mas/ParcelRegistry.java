@@ -0,0 +1,177 @@
+package mas;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.Model;
+import rinde.sim.core.model.pdp.Parcel;
+import rinde.sim.core.model.road.RoadUser;
+import rinde.sim.pdptw.common.DefaultParcel;
+import rinde.sim.pdptw.common.ParcelDTO;
+import rinde.sim.util.TimeWindow;
+
+/**
+ * Hands out dense integer ids to the parcels of one simulation, so parcel sets
+ * can be stored as bitsets. Parcels get their id when they are created, see
+ * Configuration.getParcelCreator. Smart vehicles get a reference to the
+ * registry when they are registered.
+ * <p>
+ * The locations, time windows and service durations of the parcels are kept
+ * in primitive arrays indexed by id, so hot loops need not follow the
+ * references of a parcel.
+ */
+public class ParcelRegistry implements Model<RoadUser> {
+
+	private final Map<Parcel, Integer> ids = new HashMap<Parcel, Integer>();
+	private int size = 0;
+	private double[] originX = new double[0];
+	private double[] originY = new double[0];
+	private double[] destinationX = new double[0];
+	private double[] destinationY = new double[0];
+	private long[] pickupBegin = new long[0];
+	private long[] pickupEnd = new long[0];
+	private long[] deliveryBegin = new long[0];
+	private long[] deliveryEnd = new long[0];
+	private long[] pickupDuration = new long[0];
+	private long[] deliveryDuration = new long[0];
+
+	/**
+	 * Register a parcel that is being created from dto.
+	 */
+	public int add(Parcel parcel, ParcelDTO dto) {
+		return add(parcel, dto.pickupLocation, dto.destinationLocation,
+				dto.pickupTimeWindow, dto.deliveryTimeWindow, dto.pickupDuration,
+				dto.deliveryDuration);
+	}
+
+	/**
+	 * The origin of a parcel without a dto is unknown (NaN).
+	 */
+	private int add(Parcel parcel, Point origin, Point destination,
+			TimeWindow pickupWindow, TimeWindow deliveryWindow,
+			long pickupDuration, long deliveryDuration) {
+		Integer id = ids.get(parcel);
+		if (id != null)
+			return id;
+		id = size++;
+		ids.put(parcel, id);
+		grow();
+		originX[id] = origin == null ? Double.NaN : origin.x;
+		originY[id] = origin == null ? Double.NaN : origin.y;
+		destinationX[id] = destination.x;
+		destinationY[id] = destination.y;
+		pickupBegin[id] = pickupWindow.begin;
+		pickupEnd[id] = pickupWindow.end;
+		deliveryBegin[id] = deliveryWindow.begin;
+		deliveryEnd[id] = deliveryWindow.end;
+		this.pickupDuration[id] = pickupDuration;
+		this.deliveryDuration[id] = deliveryDuration;
+		return id;
+	}
+
+	/**
+	 * Only reads, ids are handed out when parcels are registered, so the
+	 * vehicles may look them up while deciding in parallel.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the parcel was never registered.
+	 */
+	public int id(Parcel parcel) {
+		Integer id = ids.get(parcel);
+		if (id == null)
+			throw new IllegalArgumentException("Unregistered parcel " + parcel);
+		return id;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double originX(int id) {
+		return originX[id];
+	}
+
+	public double originY(int id) {
+		return originY[id];
+	}
+
+	public double destinationX(int id) {
+		return destinationX[id];
+	}
+
+	public double destinationY(int id) {
+		return destinationY[id];
+	}
+
+	public long pickupBegin(int id) {
+		return pickupBegin[id];
+	}
+
+	public long pickupEnd(int id) {
+		return pickupEnd[id];
+	}
+
+	public long deliveryBegin(int id) {
+		return deliveryBegin[id];
+	}
+
+	public long deliveryEnd(int id) {
+		return deliveryEnd[id];
+	}
+
+	public long pickupDuration(int id) {
+		return pickupDuration[id];
+	}
+
+	public long deliveryDuration(int id) {
+		return deliveryDuration[id];
+	}
+
+	private void grow() {
+		if (size <= destinationX.length)
+			return;
+		int length = Math.max(16, 2 * destinationX.length);
+		originX = Arrays.copyOf(originX, length);
+		originY = Arrays.copyOf(originY, length);
+		destinationX = Arrays.copyOf(destinationX, length);
+		destinationY = Arrays.copyOf(destinationY, length);
+		pickupBegin = Arrays.copyOf(pickupBegin, length);
+		pickupEnd = Arrays.copyOf(pickupEnd, length);
+		deliveryBegin = Arrays.copyOf(deliveryBegin, length);
+		deliveryEnd = Arrays.copyOf(deliveryEnd, length);
+		pickupDuration = Arrays.copyOf(pickupDuration, length);
+		deliveryDuration = Arrays.copyOf(deliveryDuration, length);
+	}
+
+	@Override
+	public boolean register(RoadUser element) {
+		if (element instanceof DefaultParcel) {
+			add((Parcel) element, ((DefaultParcel) element).dto);
+			return true;
+		} else if (element instanceof Parcel) {
+			Parcel parcel = (Parcel) element;
+			add(parcel, null, parcel.getDestination(),
+					parcel.getPickupTimeWindow(), parcel.getDeliveryTimeWindow(),
+					parcel.getPickupDuration(), parcel.getDeliveryDuration());
+			return true;
+		} else if (element instanceof SmartVehicle) {
+			((SmartVehicle) element).setParcelRegistry(this);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean unregister(RoadUser element) {
+		// Ids stay valid for the rest of the simulation.
+		return false;
+	}
+
+	@Override
+	public Class<RoadUser> getSupportedType() {
+		return RoadUser.class;
+	}
+
+}
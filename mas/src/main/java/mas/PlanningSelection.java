@@ -0,0 +1,216 @@
+package mas;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import mas.SmartVehicle.BidMessage;
+import mas.SmartVehicle.BidStore;
+import rinde.sim.core.TimeLapse;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.pdp.PDPModel;
+import rinde.sim.core.model.pdp.PDPModel.ParcelState;
+import rinde.sim.core.model.pdp.Parcel;
+import rinde.sim.core.model.road.RoadModel;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+
+/**
+ * Keeps a route of pickups and deliveries for every vehicle and follows it.
+ * The route is repaired instead of rebuilt: stops of parcels that were lost
+ * to a better bid, vanished or were delivered are removed, new parcels are
+ * inserted where they lengthen the route the least. When neither the cargo nor
+ * the parcels the vehicle is bidding on changed since the last repair and the
+ * first stop can still be made, the route is kept as it is in O(1).
+ * <p>
+ * The route holds the cargo and at most maxPickups parcels the vehicle holds
+ * the best bid on, the highest bids are planned first.
+ */
+public class PlanningSelection implements SelectStrategy {
+
+	private final int maxPickups;
+	/**
+	 * The plan of each vehicle, the strategy is shared by the whole fleet.
+	 * The vehicles of finished simulations drop out with the weak keys.
+	 */
+	private final Map<SmartVehicle, Plan> plans = Collections
+			.synchronizedMap(new WeakHashMap<SmartVehicle, Plan>());
+
+	public PlanningSelection() {
+		this(4);
+	}
+
+	public PlanningSelection(int maxPickups) {
+		this.maxPickups = maxPickups;
+	}
+
+	@Override
+	public Parcel parcel(SmartVehicle thisVehicle, final PDPModel pm,
+			RoadModel rm, TimeLapse time, Optional<Parcel> curr,
+			BidStore commBids, long seed) {
+		Plan plan = plans.get(thisVehicle);
+		if (plan == null) {
+			plan = new Plan();
+			plans.put(thisVehicle, plan);
+		}
+		// Picking up purges our bid and delivering shrinks the cargo, so
+		// both show up here.
+		return repair(plan, thisVehicle.getPosition(),
+				pm.getContents(thisVehicle),
+				commBids.senderVersion(thisVehicle),
+				commBids.senderParcels(thisVehicle),
+				commBids.senderMessages(thisVehicle), new Predicate<Parcel>() {
+					@Override
+					public boolean apply(Parcel parcel) {
+						return isPending(pm.getParcelState(parcel));
+					}
+				});
+	}
+
+	/**
+	 * Repair plan for a vehicle at position with cargo, that holds the best
+	 * bids on the parcels in won. Version changes whenever won does.
+	 * 
+	 * @return The parcel of the first stop, null when there is nothing to do.
+	 */
+	Parcel repair(Plan plan, Point position, Set<Parcel> cargo, long version,
+			Set<Parcel> won, Collection<BidMessage> bids,
+			Predicate<Parcel> pending) {
+		List<Stop> route = plan.route;
+		if (version == plan.version && cargo.size() == plan.cargoSize
+				&& (route.isEmpty() || isReachable(cargo, pending, route.get(0))))
+			return route.isEmpty() ? null : route.get(0).parcel;
+		plan.version = version;
+		plan.cargoSize = cargo.size();
+
+		// Remove what can no longer be done.
+		int pickups = 0;
+		int deliveries = 0;
+		for (int i = route.size() - 1; i >= 0; i--) {
+			Stop stop = route.get(i);
+			if (cargo.contains(stop.parcel)) {
+				if (stop.pickup)
+					route.remove(i);
+				else
+					deliveries++;
+			} else if (!won.contains(stop.parcel)
+					|| !pending.apply(stop.parcel)) {
+				route.remove(i);
+				plan.planned.remove(stop.parcel);
+			} else if (stop.pickup) {
+				pickups++;
+			}
+		}
+
+		// Deliveries for cargo that is not planned yet.
+		if (cargo.size() > deliveries) {
+			for (Parcel parcel : cargo) {
+				if (plan.planned.add(parcel))
+					insert(route, position, 0, new Stop(parcel, false,
+							parcel.getDestination()));
+			}
+		}
+
+		// New pickups, highest bids first.
+		if (pickups < maxPickups && won.size() > pickups) {
+			List<BidMessage> candidates = new ArrayList<BidMessage>();
+			for (BidMessage bid : bids) {
+				if (!cargo.contains(bid.getParcel())
+						&& pending.apply(bid.getParcel())
+						&& !plan.planned.contains(bid.getParcel()))
+					candidates.add(bid);
+			}
+			Collections.sort(candidates, new Comparator<BidMessage>() {
+				@Override
+				public int compare(BidMessage o1, BidMessage o2) {
+					return Double.compare(o2.getBid(), o1.getBid());
+				}
+			});
+			for (BidMessage bid : candidates) {
+				if (pickups >= maxPickups)
+					break;
+				Parcel parcel = bid.getParcel();
+				plan.planned.add(parcel);
+				int at = insert(route, position, 0, new Stop(parcel, true,
+						bid.getPosition()));
+				insert(route, position, at + 1, new Stop(parcel, false,
+						parcel.getDestination()));
+				pickups++;
+			}
+		}
+
+		return route.isEmpty() ? null : route.get(0).parcel;
+	}
+
+	private static boolean isPending(ParcelState state) {
+		return state == ParcelState.ANNOUNCED || state == ParcelState.AVAILABLE;
+	}
+
+	/**
+	 * Whether the parcel of a stop is still in the cargo or waiting to be
+	 * picked up.
+	 */
+	private static boolean isReachable(Set<Parcel> cargo,
+			Predicate<Parcel> pending, Stop stop) {
+		return cargo.contains(stop.parcel) || pending.apply(stop.parcel);
+	}
+
+	/**
+	 * Insert stop at the index from 'from' on where it adds the least
+	 * distance to the route starting at start, in O(n).
+	 * 
+	 * @return The index of the stop.
+	 */
+	static int insert(List<Stop> route, Point start, int from,
+			Stop stop) {
+		int best = route.size();
+		double bestDelta = Double.POSITIVE_INFINITY;
+		for (int i = from; i <= route.size(); i++) {
+			Point previous = i == 0 ? start : route.get(i - 1).position;
+			double delta = Point.distance(previous, stop.position);
+			if (i < route.size()) {
+				Point next = route.get(i).position;
+				delta += Point.distance(stop.position, next)
+						- Point.distance(previous, next);
+			}
+			if (delta < bestDelta) {
+				bestDelta = delta;
+				best = i;
+			}
+		}
+		route.add(best, stop);
+		return best;
+	}
+
+	static class Plan {
+		final List<Stop> route = new ArrayList<Stop>();
+		/**
+		 * The parcels with a stop on the route.
+		 */
+		private final Set<Parcel> planned = new HashSet<Parcel>();
+		/**
+		 * Sender version of the bid store and cargo size at the last repair.
+		 */
+		private long version = -1;
+		private int cargoSize = -1;
+	}
+
+	static class Stop {
+		final Parcel parcel;
+		final boolean pickup;
+		final Point position;
+
+		Stop(Parcel parcel, boolean pickup, Point position) {
+			this.parcel = parcel;
+			this.pickup = pickup;
+			this.position = position;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package mas;
+
+import org.apache.commons.math3.random.MersenneTwister;
+
+import rinde.sim.core.model.Model;
+
+/**
+ * Gives every vehicle its own random generator, seeded from the seed of the
+ * run and the index of the vehicle in registration order. A vehicle's stream
+ * does not depend on the other vehicles or on earlier runs in the same JVM.
+ */
+public class RandomStreams implements Model<LocalVehicle> {
+
+	private final long seed;
+	private int vehicles = 0;
+
+	public RandomStreams(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * The seed of stream index, the SplitMix64 generator at position index so
+	 * nearby indices give unrelated seeds.
+	 */
+	static long seed(long seed, int index) {
+		long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public boolean register(LocalVehicle vehicle) {
+		vehicle.setRandomStream(vehicles, new MersenneTwister(seed(seed,
+				vehicles)));
+		vehicles++;
+		return true;
+	}
+
+	@Override
+	public boolean unregister(LocalVehicle vehicle) {
+		return false;
+	}
+
+	@Override
+	public Class<LocalVehicle> getSupportedType() {
+		return LocalVehicle.class;
+	}
+}
@@ -1,8 +1,6 @@
 package mas;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 
 import mas.SmartVehicle.BidStore;
 import rinde.sim.core.TimeLapse;
@@ -15,27 +13,103 @@ public class SimpleValueStrategy implements ValueStrategy {
 	@Override
 	public double assign(SmartVehicle thisVehicle, PDPModel pm, RoadModel rm,
 			TimeLapse time, BidStore commBids, Point position,
-			Collection<Parcel> cargoIn, Parcel parcel) {
+			Collection<Parcel> cargo, Parcel parcel) {
+		return value(thisVehicle, pm, rm, time.getTime(), commBids, position,
+				cargo, parcel);
+	}
+
+	@Override
+	public void assignAll(SmartVehicle thisVehicle, PDPModel pm, RoadModel rm,
+			TimeLapse time, BidStore commBids, Point position,
+			Collection<Parcel> cargo, Parcel[] parcels, int count,
+			double[] values) {
+		long now = time.getTime();
+		for (int i = 0; i < count; i++) {
+			values[i] = value(thisVehicle, pm, rm, now, commBids, position,
+					cargo, parcels[i]);
+		}
+	}
 
-		Set<Parcel> cargo = new HashSet<Parcel>(cargoIn);
+	private double value(SmartVehicle thisVehicle, PDPModel pm, RoadModel rm,
+			long now, BidStore commBids, Point position,
+			Collection<Parcel> cargo, Parcel parcel) {
 		boolean inCargo = pm.containerContains(thisVehicle, parcel);
-		if (inCargo)
-			cargo.remove(parcel);
-
-		double distance = Point.distance(position, parcel.getDestination());
-		if (!inCargo) {
-			distance = commBids.position(parcel) != null ? Point.distance(
-					position, commBids.position(parcel)) : Point.distance(
-					position, rm.getPosition(parcel));
+		int cargoSize = otherCargo(cargo, parcel, inCargo);
+
+		// Bids on the cargo are purged at pickup, so the id comes from the
+		// registry rather than from a bid.
+		ParcelRegistry registry = thisVehicle.getParcelRegistry();
+		int id = registry.id(parcel);
+
+		double distance;
+		if (inCargo) {
+			double dx = registry.destinationX(id) - position.x;
+			double dy = registry.destinationY(id) - position.y;
+			distance = Math.sqrt(dx * dx + dy * dy);
+		} else if (Double.isNaN(registry.originX(id))) {
+			distance = Point.distance(position, rm.getPosition(parcel));
+		} else {
+			// The pickup location of a parcel that is not picked up yet.
+			double dx = registry.originX(id) - position.x;
+			double dy = registry.originY(id) - position.y;
+			distance = Math.sqrt(dx * dx + dy * dy);
 		}
 
-		double arrivalTime = time.getTime() + distance / thisVehicle.getSpeed()
-				* 3600000;
-		double parcelWindowStart = inCargo ? parcel.getDeliveryTimeWindow().begin
-				: parcel.getPickupTimeWindow().begin;
-		double timePenalty = Math.abs(parcelWindowStart - arrivalTime);
+		return value(cargoSize, distance, thisVehicle.getSpeed(), now,
+				windowStart(registry, id, inCargo));
+	}
+
+	/**
+	 * A parcel in the cargo of the vehicle is in every cargo the bound is
+	 * for, so the other parcels are known from the size alone.
+	 */
+	@Override
+	public double upperBound(SmartVehicle thisVehicle, PDPModel pm,
+			TimeLapse time, int cargoSize, Parcel parcel) {
+		boolean inCargo = pm.containerContains(thisVehicle, parcel);
+		ParcelRegistry registry = thisVehicle.getParcelRegistry();
+		return upperBound(inCargo ? cargoSize - 1 : cargoSize, time.getTime(),
+				windowStart(registry, registry.id(parcel), inCargo));
+	}
+
+	/**
+	 * The value of a parcel whose window starts at windowStart, for a vehicle
+	 * with cargoSize other parcels that is distance away at the given speed.
+	 */
+	static double value(int cargoSize, double distance, double speed,
+			long now, double windowStart) {
+		double arrivalTime = now + distance / speed * 3600000;
+		double timePenalty = Math.abs(windowStart - arrivalTime);
 
 		// Between 2^52 and 2^53, doubles are integers.
-		return (2 ^ 53) / (cargo.size() * timePenalty);
+		return (2 ^ 53) / (cargoSize * timePenalty);
+	}
+
+	/**
+	 * Bounds value for any distance. The vehicle never arrives before now, so
+	 * once the window has started the time penalty is at least the time since
+	 * its start. Otherwise the penalty can be zero and there is no bound.
+	 */
+	static double upperBound(int cargoSize, long now, double windowStart) {
+		double minTimePenalty = now - windowStart;
+		if (cargoSize <= 0 || minTimePenalty <= 0)
+			return Double.POSITIVE_INFINITY;
+		return (2 ^ 53) / (cargoSize * minTimePenalty);
+	}
+
+	/**
+	 * The number of other parcels in the cargo.
+	 */
+	private static int otherCargo(Collection<Parcel> cargo, Parcel parcel,
+			boolean inCargo) {
+		int cargoSize = cargo.size();
+		if (inCargo && cargo.contains(parcel))
+			cargoSize--;
+		return cargoSize;
+	}
+
+	private static double windowStart(ParcelRegistry registry, int id,
+			boolean inCargo) {
+		return inCargo ? registry.deliveryBegin(id) : registry.pickupBegin(id);
 	}
 }
@@ -0,0 +1,240 @@
+package mas;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters shared by all smart vehicles of one configuration. They are written
+ * to the experiment json next to the simulation statistics.
+ */
+public class SmartStatistics {
+
+	private final AtomicLong ticks = new AtomicLong();
+	private final AtomicLong rekeyTime = new AtomicLong();
+	private final AtomicLong costEvaluations = new AtomicLong();
+	private final AtomicLong costSkips = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong messagesSent = new AtomicLong();
+	private final AtomicLong bidsSent = new AtomicLong();
+	private final AtomicLong peakStoreSize = new AtomicLong();
+	private final AtomicLong decideTicks = new AtomicLong();
+	private final AtomicLong costHits = new AtomicLong();
+	private final AtomicLong selectTime = new AtomicLong();
+	private final AtomicLong costPruned = new AtomicLong();
+	private final AtomicLong costBounds = new AtomicLong();
+	private final AtomicLong costMisses = new AtomicLong();
+	private final AtomicLong decideTime = new AtomicLong();
+	private final AtomicLong drainTime = new AtomicLong();
+
+	/**
+	 * @param nanos
+	 *            Time spent re-keying and re-heapifying the BidStore.
+	 */
+	public void recordRekey(long nanos) {
+		ticks.incrementAndGet();
+		rekeyTime.addAndGet(nanos);
+	}
+
+	/**
+	 * @param nanos
+	 *            Time spent handling the messages received since the last
+	 *            tick.
+	 */
+	public void recordDrain(long nanos) {
+		drainTime.addAndGet(nanos);
+	}
+
+	/**
+	 * @param evaluated
+	 *            Bids re-costed during one tick.
+	 * @param skipped
+	 *            Bids that kept their previous value.
+	 */
+	public void recordRebid(int evaluated, int skipped) {
+		costEvaluations.addAndGet(evaluated);
+		costSkips.addAndGet(skipped);
+	}
+
+	public void recordEviction() {
+		evictions.incrementAndGet();
+	}
+
+	public void recordStoreSize(int size) {
+		long peak = peakStoreSize.get();
+		while (size > peak && !peakStoreSize.compareAndSet(peak, size)) {
+			peak = peakStoreSize.get();
+		}
+	}
+
+	/**
+	 * @param bids
+	 *            Number of bids in the broadcast message.
+	 */
+	public void recordSent(int bids) {
+		messagesSent.incrementAndGet();
+		bidsSent.addAndGet(bids);
+	}
+
+	/**
+	 * @param nanos
+	 *            Wall clock time the whole fleet spent deciding during one
+	 *            tick, see ParallelTicker.
+	 */
+	public void recordDecide(long nanos) {
+		decideTicks.incrementAndGet();
+		decideTime.addAndGet(nanos);
+	}
+
+	/**
+	 * @param nanos
+	 *            Wall clock time of one call to the select strategy.
+	 */
+	public void recordSelect(long nanos) {
+		selectTime.addAndGet(nanos);
+	}
+
+	/**
+	 * @param costs
+	 *            Cost evaluations skipped by bounded scoring.
+	 * @param bounds
+	 *            Upper bounds computed to skip them.
+	 */
+	public void recordPruned(long costs, long bounds) {
+		costPruned.addAndGet(costs);
+		costBounds.addAndGet(bounds);
+	}
+
+	public void recordCostLookup(boolean hit) {
+		if (hit)
+			costHits.incrementAndGet();
+		else
+			costMisses.incrementAndGet();
+	}
+
+	public long getTicks() {
+		return ticks.get();
+	}
+
+	/**
+	 * Average time per vehicle tick spent rebuilding the BidStore heap, in
+	 * nanoseconds.
+	 */
+	public double getRekeyTime() {
+		return ratio(rekeyTime.get(), ticks.get());
+	}
+
+	/**
+	 * Average time per vehicle tick spent handling received messages, in
+	 * nanoseconds.
+	 */
+	public double getDrainTime() {
+		return ratio(drainTime.get(), ticks.get());
+	}
+
+	/**
+	 * Fraction of rebid cost evaluations that were skipped.
+	 */
+	public double getRebidSkipped() {
+		return ratio(costSkips.get(), costEvaluations.get() + costSkips.get());
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Largest number of bids held by any one vehicle.
+	 */
+	public long getPeakStoreSize() {
+		return peakStoreSize.get();
+	}
+
+	public long getMessagesSent() {
+		return messagesSent.get();
+	}
+
+	/**
+	 * Average number of bids per broadcast message.
+	 */
+	public double getBundleOccupancy() {
+		return ratio(bidsSent.get(), messagesSent.get());
+	}
+
+	/**
+	 * Average wall clock time per tick spent in the decide phase of the
+	 * ParallelTicker, in nanoseconds. Comparing it between thread counts
+	 * gives the speedup.
+	 */
+	public double getDecideTime() {
+		return ratio(decideTime.get(), decideTicks.get());
+	}
+
+	/**
+	 * Average wall clock time per vehicle tick spent selecting a parcel, in
+	 * nanoseconds.
+	 */
+	public double getSelectTime() {
+		return ratio(selectTime.get(), ticks.get());
+	}
+
+	/**
+	 * Average number of cost evaluations per vehicle tick that bounded
+	 * scoring skipped.
+	 */
+	public double getCostPruned() {
+		return ratio(costPruned.get(), ticks.get());
+	}
+
+	/**
+	 * Average number of upper bounds per vehicle tick that bounded scoring
+	 * computed.
+	 */
+	public double getCostBounds() {
+		return ratio(costBounds.get(), ticks.get());
+	}
+
+	/**
+	 * Average number of calls into the value strategy per vehicle tick that
+	 * bounded scoring saved, the skipped cost evaluations minus the bounds it
+	 * took. Negative when the bounds cost more than they save.
+	 */
+	public double getNetCostSaved() {
+		return ratio(costPruned.get() - costBounds.get(), ticks.get());
+	}
+
+	public long getCostHits() {
+		return costHits.get();
+	}
+
+	public long getCostMisses() {
+		return costMisses.get();
+	}
+
+	/**
+	 * Fraction of cost lookups answered by the cost cache.
+	 */
+	public double getCostHitRate() {
+		return ratio(costHits.get(), costHits.get() + costMisses.get());
+	}
+
+	private static double ratio(long numerator, long denominator) {
+		return denominator == 0 ? 0 : (double) numerator / denominator;
+	}
+
+	@Override
+	public String toString() {
+		String json = "{ \"ticks\" : " + getTicks() + ", \"rekeyTime\" : "
+				+ getRekeyTime() + ", \"drainTime\" : " + getDrainTime()
+				+ ", \"rebidSkipped\" : "
+				+ getRebidSkipped() + ", \"evictions\" : " + getEvictions()
+				+ ", \"peakStoreSize\" : " + getPeakStoreSize()
+				+ ", \"messagesSent\" : " + getMessagesSent()
+				+ ", \"bundleOccupancy\" : " + getBundleOccupancy()
+				+ ", \"decideTime\" : " + getDecideTime()
+				+ ", \"costHits\" : " + getCostHits() + ", \"costMisses\" : "
+				+ getCostMisses() + ", \"selectTime\" : " + getSelectTime()
+				+ ", \"costPruned\" : " + getCostPruned()
+				+ ", \"costBounds\" : " + getCostBounds()
+				+ ", \"netCostSaved\" : " + getNetCostSaved() + "}";
+		return json;
+	}
+}
@@ -0,0 +1,101 @@
+package mas;
+
+/**
+ * Optional knobs that trade decision quality against speed for the smart
+ * vehicles. The defaults reproduce the original behaviour.
+ */
+public class SmartTuning {
+
+	/**
+	 * Distance a vehicle may travel before all bids are re-costed. Between
+	 * full rebids only bids that changed are re-costed. Negative to re-cost
+	 * every bid on every tick.
+	 */
+	public double rebidDisplacement = -1;
+
+	/**
+	 * Maximum number of bids a vehicle stores, when full a bid is dropped
+	 * according to evictionPolicy.
+	 */
+	public int storeCapacity = Integer.MAX_VALUE;
+	public EvictionPolicy evictionPolicy = EvictionPolicy.LOWEST_VALUE;
+
+	/**
+	 * Maximum number of bids broadcast together in one message, one sends
+	 * plain bids.
+	 */
+	public int bundleSize = 1;
+
+	/**
+	 * Prefix of the file the contact graph of each run is logged to, the
+	 * seed and .csv are appended. Null to not log contacts.
+	 */
+	public String contactLog = null;
+
+	/**
+	 * Send every neighbour only the bids that changed since it last received
+	 * them, or that are about to expire at its side, instead of cycling
+	 * through all bids.
+	 */
+	public boolean deltaSync = false;
+
+	/**
+	 * Number of slices the vehicles decide in, in parallel, before acting in
+	 * turn, see ParallelTicker. At most one thread per processor works on
+	 * them. Zero to let every vehicle decide and act during its own tick,
+	 * which gives different results than any number of slices, as vehicles
+	 * then see what the vehicles before them did in the same tick.
+	 */
+	public int parallelTicks = 0;
+
+	/**
+	 * Number of cost evaluations each vehicle caches, zero to evaluate every
+	 * cost. Positions are rounded to costCacheQuantum and times to
+	 * costCacheBucket ms, zero to only reuse exact repeats.
+	 */
+	public int costCacheCapacity = 0;
+	public double costCacheQuantum = 0;
+	public long costCacheBucket = 0;
+
+	public SmartTuning withRebidDisplacement(double distance) {
+		rebidDisplacement = distance;
+		return this;
+	}
+
+	public SmartTuning withStoreCapacity(int capacity, EvictionPolicy policy) {
+		storeCapacity = capacity;
+		evictionPolicy = policy;
+		return this;
+	}
+
+	public SmartTuning withBundleSize(int size) {
+		bundleSize = size;
+		return this;
+	}
+
+	public SmartTuning withContactLog(String prefix) {
+		contactLog = prefix;
+		return this;
+	}
+
+	public SmartTuning withDeltaSync() {
+		deltaSync = true;
+		return this;
+	}
+
+	public SmartTuning withParallelTicks(int threads) {
+		parallelTicks = threads;
+		return this;
+	}
+
+	public SmartTuning withCostCache(int capacity, double quantum, long bucket) {
+		costCacheCapacity = capacity;
+		costCacheQuantum = quantum;
+		costCacheBucket = bucket;
+		return this;
+	}
+
+	public boolean incrementalRebid() {
+		return rebidDisplacement >= 0;
+	}
+}
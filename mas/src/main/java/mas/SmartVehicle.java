@@ -4,18 +4,23 @@ import static rinde.sim.core.model.pdp.PDPModel.ParcelState.ANNOUNCED;
 import static rinde.sim.core.model.pdp.PDPModel.ParcelState.AVAILABLE;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-import org.apache.commons.math3.random.MersenneTwister;
 import rinde.sim.core.TimeLapse;
 import rinde.sim.core.graph.Point;
 import rinde.sim.core.model.communication.CommunicationAPI;
@@ -23,12 +28,17 @@ import rinde.sim.core.model.communication.CommunicationUser;
 import rinde.sim.core.model.communication.Message;
 import rinde.sim.core.model.pdp.Depot;
 import rinde.sim.core.model.pdp.PDPModel;
+import rinde.sim.core.model.pdp.PDPModel.VehicleState;
 import rinde.sim.core.model.pdp.Parcel;
 import rinde.sim.core.model.road.RoadModel;
 import rinde.sim.core.model.road.RoadModels;
 import rinde.sim.pdptw.common.VehicleDTO;
+import rinde.sim.util.TimeWindow;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
 
 class SmartVehicle extends LocalVehicle implements CommunicationUser {
 
@@ -37,11 +47,53 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 	public static final String C_VERMILLION = "color.Vermillion";
 
 	private CommunicationAPI cm;
+	/**
+	 * The same as cm when it is a LocalCommunicationModel.
+	 */
+	private LocalCommunicationModel comm;
 	private int commCounter = 0;
-	private final Map<SmartVehicle, Integer> commWith = new HashMap<SmartVehicle, Integer>();
-
-	private final Set<Parcel> vanishedParcels = new HashSet<Parcel>();
-	private final LinkedList<Parcel> vanishedDiscoveries = new LinkedList<Parcel>();
+	/**
+	 * Messages received since the last tick. Any thread may deliver, only
+	 * this vehicle takes them out at the start of its tick.
+	 */
+	private final Queue<Message> mailbox = new ConcurrentLinkedQueue<Message>();
+	/**
+	 * Messages prepared by decide, sent at the start of act.
+	 */
+	private final List<Outgoing> outgoing = new ArrayList<Outgoing>();
+	/**
+	 * Whether decide already ran for the current tick.
+	 */
+	private boolean decided = false;
+	/**
+	 * Number of ticks a contact stays in commWith.
+	 */
+	private static final int CONTACT_TICKS = 100;
+	/**
+	 * The tick of the last bid each vehicle received from this vehicle,
+	 * contacts older than CONTACT_TICKS are ignored when read. Concurrent, as
+	 * the renderer iterates over it while the simulation adds contacts.
+	 */
+	private final Map<SmartVehicle, Long> commWith = new ConcurrentHashMap<SmartVehicle, Long>();
+	private long ticks = 0;
+	private ContactGraph contactGraph;
+	/**
+	 * Delta sync only: per neighbour, the version vector of the bids it
+	 * received from this vehicle.
+	 */
+	private final Map<SmartVehicle, VersionVector> versionVectors = new HashMap<SmartVehicle, VersionVector>();
+
+	private ParcelRegistry parcelRegistry;
+	/**
+	 * Ids of all parcels known to have vanished, by discovery or gossip.
+	 */
+	private final BitSet vanishedParcels = new BitSet();
+	/**
+	 * Immutable copy of vanishedParcels, shared by every bid until the set
+	 * changes.
+	 */
+	private ParcelDigest vanishedSnapshot = ParcelDigest.EMPTY;
+	private boolean vanishedChanged = false;
 
 	private double commReliability = 0.8;
 	public final int TTL;
@@ -51,6 +103,28 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 	private final ValueStrategy value;
 	// END: parameters
 
+	private final SmartTuning tuning;
+	private final SmartStatistics stats;
+	private final CostCache costCache;
+	/**
+	 * Reused by the rebid loops to cost bids in batches.
+	 */
+	private Parcel[] costParcels = new Parcel[16];
+	private double[] costValues = new double[16];
+
+	// Incremental rebid state, see SmartTuning.rebidDisplacement.
+	private Point rebidPosition = null;
+	private Set<Parcel> rebidCargo = null;
+	/**
+	 * Time at which the relevant time window of a parcel changes, after which
+	 * it has to be re-costed.
+	 */
+	private final Map<Parcel, Long> rebidDeadlines = new HashMap<Parcel, Long>();
+	/**
+	 * Parcels that received a competing bid since they were last costed.
+	 */
+	private final Set<Parcel> dirtyBids = new HashSet<Parcel>();
+
 	private final BidStore commBids = new BidStore();
 
 	SmartVehicle(VehicleDTO dto) {
@@ -62,13 +136,17 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 		this.TTL = 5;
 		this.randomMovementScalingFactor = 0.5 * commRadius;
 		this.roadUserInfluenceOnRandomWalk = 0.03;
+		this.tuning = new SmartTuning();
+		this.stats = new SmartStatistics();
+		this.costCache = new CostCache(0, 0, 0, stats);
 	}
 
 	SmartVehicle(VehicleDTO dto, SelectStrategy selectStrategy,
 			ValueStrategy valueStrategy, double commRadius,
 			double commReliability, int timeToLive,
 			double randomMovementScalingfactor,
-			double roadUserInfluenceOnRandomWalk) {
+			double roadUserInfluenceOnRandomWalk, SmartTuning tuning,
+			SmartStatistics stats) {
 		super(dto);
 		this.select = selectStrategy;
 		this.value = valueStrategy;
@@ -78,54 +156,162 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 		this.randomMovementScalingFactor = randomMovementScalingfactor
 				* commRadius;
 		this.roadUserInfluenceOnRandomWalk = roadUserInfluenceOnRandomWalk;
+		this.tuning = tuning;
+		this.stats = stats;
+		this.costCache = new CostCache(tuning.costCacheCapacity,
+				tuning.costCacheQuantum, tuning.costCacheBucket, stats);
 	}
 
 	@Override
 	public void afterTick(TimeLapse timeLapse) {
-		incrementCommWith();
-		refreshCommWith();
+		ticks++;
 	}
 
 	@Override
 	protected void tickImpl(TimeLapse time) {
-		final RoadModel rm = roadModel.get();
-		final PDPModel pm = pdpModel.get();
-
 		if (!time.hasTimeLeft()) {
+			// Still servicing, a decision made in advance is stale by now.
+			decided = false;
+			outgoing.clear();
 			return;
 		}
+		if (!decided)
+			decide(time, nextSeed());
+		decided = false;
+		act(time);
+	}
+
+	/**
+	 * Draw the seed for the next decide from the random stream of this
+	 * vehicle.
+	 */
+	long nextSeed() {
+		return rng.nextLong();
+	}
+
+	/**
+	 * Whether this vehicle will decide during its next tick, as it does when
+	 * it is not picking up or delivering a parcel and did not decide yet.
+	 */
+	boolean needsDecision() {
+		return !decided && pdpModel.isPresent()
+				&& pdpModel.get().getVehicleState(this) == VehicleState.IDLE;
+	}
+
+	/**
+	 * Everything up to choosing curr that only changes the state of this
+	 * vehicle: applying received bids, rebidding, preparing the broadcast and
+	 * selecting a parcel. Other vehicles and the models are only read, so the
+	 * decisions of a fleet can be made in parallel, see ParallelTicker.
+	 */
+	void decide(TimeLapse time, long seed) {
+		final RoadModel rm = roadModel.get();
+		final PDPModel pm = pdpModel.get();
+		outgoing.clear();
+
+		// Position and cargo may have changed since the last tick.
+		long drainStart = System.nanoTime();
+		drainMailbox();
+		stats.recordDrain(System.nanoTime() - drainStart);
+		long rekeyStart = System.nanoTime();
+		commBids.rekey(time.getTime());
+		stats.recordRekey(System.nanoTime() - rekeyStart);
+		if (tuning.deltaSync)
+			commBids.advanceLap();
+
+		sense(pm, rm);
+		if (costCache.isEnabled())
+			costCache.ownCargo(CostCache.signature(pm.getContents(this),
+					getParcelRegistry()));
 
 		// Record vanished parcels.
-		Collection<BidMessage> allBids = new ArrayList<BidMessage>(
-				commBids.getBids());
-		for (BidMessage bid : allBids) {
-			if (!pm.containerContains(this, bid.getParcel())
-					&& !getVisibleParcels(pm, rm).contains(bid.getParcel())
-					&& Point.distance(getPosition(), bid.getPosition()) < commRadius) {
-				discoverVanished(bid.getParcel());
+		List<Parcel> vanished = new ArrayList<Parcel>();
+		for (BidMessage bid : commBids.getBids()) {
+			Parcel parcel = bid.getParcel();
+			if (!visibleParcels.contains(parcel) && inRange(bid.getPosition())
+					&& !pm.containerContains(this, parcel)) {
+				vanished.add(parcel);
 			}
 		}
+		for (Parcel parcel : vanished) {
+			discoverVanished(parcel);
+		}
 
 		// Look at all the parcels you can see (new or not)
-		Set<Parcel> parcelSet = new HashSet<Parcel>(getVisibleParcels(pm, rm));
-		// add the ones you've heard about or are bidding on yourself
-		parcelSet.removeAll(commBids.getParcels());
+		List<Parcel> parcelSet = new ArrayList<Parcel>(visibleParcels.size());
+		// except the ones you've heard about or are bidding on yourself
+		for (Parcel parcel : visibleParcels) {
+			if (!commBids.getParcels().contains(parcel))
+				parcelSet.add(parcel);
+		}
 		// Bid on all of them if appropriate
+		Set<Parcel> cargo = pm.getContents(this);
+		boolean rebidAll = rebidAll(cargo);
+		int evaluated = 0;
+		int skipped = 0;
+		int count = 0;
+		ensureCostBuffers(parcelSet.size());
 		for (Parcel parcel : parcelSet) {
-			commBids.ensconce(new BidMessage(this, parcel, cost(pm, rm, time,
-					getPosition(), pm.getContents(this), parcel), TTL));
+			costParcels[count++] = parcel;
 		}
-		for (BidMessage bid : new ArrayList<BidMessage>(commBids.getBids())) {
-			commBids.ensconce(new BidMessage(this, bid.getParcel(), cost(pm,
-					rm, time, getPosition(), pm.getContents(this),
-					bid.getParcel()), TTL, bid.getPosition()));
+		costAll(pm, rm, time, getPosition(), cargo, costParcels, count,
+				costValues);
+		for (int i = 0; i < count; i++) {
+			commBids.ensconce(new BidMessage(this, costParcels[i],
+					costValues[i], TTL));
+			scheduleRebid(costParcels[i], pm, time);
+			evaluated++;
 		}
+		List<BidMessage> bids = new ArrayList<BidMessage>(commBids.getBids());
+		boolean[] rebid = new boolean[bids.size()];
+		count = 0;
+		ensureCostBuffers(bids.size());
+		for (int i = 0; i < rebid.length; i++) {
+			Parcel parcel = bids.get(i).getParcel();
+			rebid[i] = rebidAll || needsRebid(parcel, time);
+			if (rebid[i])
+				costParcels[count++] = parcel;
+		}
+		costAll(pm, rm, time, getPosition(), cargo, costParcels, count,
+				costValues);
+		count = 0;
+		for (int i = 0; i < rebid.length; i++) {
+			BidMessage bid = bids.get(i);
+			Parcel parcel = bid.getParcel();
+			if (rebid[i]) {
+				commBids.ensconce(new BidMessage(this, parcel,
+						costValues[count++], TTL, bid.getPosition()));
+				scheduleRebid(parcel, pm, time);
+				evaluated++;
+			} else {
+				// Keep the previous value but don't let our own bid expire.
+				if (bid.getOriginalSender() == this)
+					commBids.ensconce(new BidMessage(this, parcel, bid
+							.getBid(), TTL, bid.getPosition()));
+				skipped++;
+			}
+		}
+		stats.recordRebid(evaluated, skipped);
 
-		sendBid();
+		prepareBids();
 
 		// Select current obsession
+		long selectStart = System.nanoTime();
 		curr = Optional.fromNullable(select.parcel(this, pm, rm, time, curr,
-				commBids, rng.nextLong()));
+				commBids, seed));
+		stats.recordSelect(System.nanoTime() - selectStart);
+		decided = true;
+	}
+
+	/**
+	 * Send the prepared bids and move, pick up or deliver according to the
+	 * decision.
+	 */
+	private void act(TimeLapse time) {
+		final RoadModel rm = roadModel.get();
+		final PDPModel pm = pdpModel.get();
+
+		flushBids();
 
 		// Deal with it
 		if (curr.isPresent()) {
@@ -162,11 +348,11 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 			// If there are still parcels to be delivered but we can't go to
 			// pick up any of them wander around toward parcels but away from
 			// agents
-			Collection<Parcel> parcels = RoadModels.findObjectsWithinRadius(
-					getPosition(), rm, commRadius, Parcel.class);
-			Collection<SmartVehicle> agents = RoadModels
+			Collection<Parcel> parcels = parcelGrid != null ? parcelGrid
+					.within(getPosition(), commRadius) : RoadModels
 					.findObjectsWithinRadius(getPosition(), rm, commRadius,
-							SmartVehicle.class);
+							Parcel.class);
+			Collection<SmartVehicle> agents = neighbours(rm);
 			Point newDestination = new Point(0, 0);
 			for (Parcel parcel : parcels) {
 				newDestination = pointAdd(newDestination,
@@ -208,55 +394,323 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 
 			rm.moveTo(this, destination, time);
 		}
+
+		if (comm != null)
+			comm.update(this);
 	}
 
-	private void discoverVanished(Parcel vanished) {
-		vanishedDiscoveries.offer(vanished);
-		while (vanishedDiscoveries.size() > 10) {
-			vanishedDiscoveries.poll();
+	/**
+	 * Whether every bid has to be re-costed this tick: always when not
+	 * rebidding incrementally, otherwise when the cargo changed or the vehicle
+	 * moved too far since the last full rebid.
+	 */
+	private boolean rebidAll(Set<Parcel> cargo) {
+		if (!tuning.incrementalRebid())
+			return true;
+		if (rebidPosition == null
+				|| !cargo.equals(rebidCargo)
+				|| Point.distance(getPosition(), rebidPosition)
+						> tuning.rebidDisplacement) {
+			rebidPosition = getPosition();
+			rebidCargo = cargo;
+			return true;
 		}
-		vanishedParcels.add(vanished);
+		return false;
+	}
+
+	private boolean needsRebid(Parcel parcel, TimeLapse time) {
+		if (dirtyBids.remove(parcel))
+			return true;
+		Long deadline = rebidDeadlines.get(parcel);
+		return deadline == null || time.getTime() >= deadline;
+	}
+
+	private void scheduleRebid(Parcel parcel, PDPModel pm, TimeLapse time) {
+		// Not for a bid that was evicted as soon as it was stored.
+		if (!tuning.incrementalRebid() || commBids.get(parcel) == null)
+			return;
+		dirtyBids.remove(parcel);
+		TimeWindow window = pm.containerContains(this, parcel) ? parcel
+				.getDeliveryTimeWindow() : parcel.getPickupTimeWindow();
+		long deadline = Long.MAX_VALUE;
+		if (time.getTime() < window.begin)
+			deadline = window.begin;
+		else if (time.getTime() < window.end)
+			deadline = window.end;
+		rebidDeadlines.put(parcel, deadline);
+	}
+
+	private void discoverVanished(Parcel vanished) {
+		vanishedParcels.set(getParcelRegistry().id(vanished));
+		vanishedChanged = true;
 		commBids.purge(vanished);
 	}
 
+	private ParcelDigest vanishedDigest() {
+		if (vanishedChanged) {
+			vanishedSnapshot = ParcelDigest.of(vanishedParcels);
+			vanishedChanged = false;
+		}
+		return vanishedSnapshot;
+	}
+
+	private int parcelId(Parcel parcel) {
+		return getParcelRegistry().id(parcel);
+	}
+
+	/**
+	 * Deterministic tiebreaker for this vehicle's bids on parcel id, a 64-bit
+	 * finalizer mix of the id and the random stream index of the vehicle.
+	 * Both are the same in every run with the same seed.
+	 */
+	private long tiebreaker(int parcelId) {
+		long z = ((long) streamIndex << 32) ^ parcelId;
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
 	public double cost(PDPModel pm, RoadModel rm, TimeLapse time,
 			Point position, Collection<Parcel> cargo, Parcel parcel) {
-		return value.assign(this, pm, rm, time, commBids, position, cargo,
-				parcel);
+		if (!cachesCosts())
+			return value.assign(this, pm, rm, time, commBids, position, cargo,
+					parcel);
+		return cachedCost(pm, rm, time, position, cargo,
+				CostCache.signature(cargo, getParcelRegistry()), parcel);
+	}
+
+	/**
+	 * cost through the cost cache, with the signature of cargo computed by
+	 * the caller so a batch needs it only once.
+	 */
+	private double cachedCost(PDPModel pm, RoadModel rm, TimeLapse time,
+			Point position, Collection<Parcel> cargo, long signature,
+			Parcel parcel) {
+		CostCache.Key key = costCache.key(position, signature,
+				getParcelRegistry().id(parcel), time.getTime());
+		Double cached = costCache.get(key);
+		if (cached != null)
+			return cached;
+		double cost = value.assign(this, pm, rm, time, commBids, position,
+				cargo, parcel);
+		costCache.put(key, cost);
+		return cost;
+	}
+
+	/**
+	 * The cost of the first count parcels from the same position with the
+	 * same cargo, written to values.
+	 */
+	public void costAll(PDPModel pm, RoadModel rm, TimeLapse time,
+			Point position, Collection<Parcel> cargo, Parcel[] parcels,
+			int count, double[] values) {
+		if (cachesCosts()) {
+			long signature = CostCache.signature(cargo, getParcelRegistry());
+			for (int i = 0; i < count; i++) {
+				values[i] = cachedCost(pm, rm, time, position, cargo,
+						signature, parcels[i]);
+			}
+		} else {
+			value.assignAll(this, pm, rm, time, commBids, position, cargo,
+					parcels, count, values);
+		}
+	}
+
+	/**
+	 * Upper bound on cost from any position and with any cargo of cargoSize
+	 * parcels, see ValueStrategy.upperBound.
+	 */
+	public double costBound(PDPModel pm, TimeLapse time, int cargoSize,
+			Parcel parcel) {
+		return value.upperBound(this, pm, time, cargoSize, parcel);
+	}
+
+	/**
+	 * Whether parcel is in the cargo of this vehicle, never before the
+	 * vehicle is registered.
+	 */
+	boolean inCargo(Parcel parcel) {
+		return pdpModel.isPresent()
+				&& pdpModel.get().containerContains(this, parcel);
 	}
 
-	private void sendBid() {
-		Collection<SmartVehicle> receivers = RoadModels
-				.findObjectsWithinRadius(getPosition(), getRoadModel(),
-						commRadius, SmartVehicle.class);
-		receivers.remove(this);
-		if (receivers.isEmpty())
+	SmartStatistics getStatistics() {
+		return stats;
+	}
+
+	BidStore getCommBids() {
+		return commBids;
+	}
+
+	/**
+	 * Whether cost goes through the cost cache, which may only be used by
+	 * one thread at a time.
+	 */
+	boolean cachesCosts() {
+		return costCache.isEnabled();
+	}
+
+	private void ensureCostBuffers(int size) {
+		if (costParcels.length < size) {
+			int length = Math.max(size, 2 * costParcels.length);
+			costParcels = new Parcel[length];
+			costValues = new double[length];
+		}
+	}
+
+	/**
+	 * The smart vehicles within commRadius, this vehicle included.
+	 */
+	private Collection<SmartVehicle> neighbours(RoadModel rm) {
+		if (comm == null)
+			return RoadModels.findObjectsWithinRadius(getPosition(), rm,
+					commRadius, SmartVehicle.class);
+		List<SmartVehicle> neighbours = new ArrayList<SmartVehicle>();
+		for (CommunicationUser user : comm.within(getPosition(), commRadius)) {
+			if (user instanceof SmartVehicle)
+				neighbours.add((SmartVehicle) user);
+		}
+		return neighbours;
+	}
+
+	/**
+	 * Take the bids to broadcast from the BidStore, they are sent by
+	 * flushBids.
+	 */
+	private void prepareBids() {
+		if (cm == null)
+			return;
+		Collection<? extends CommunicationUser> candidates;
+		if (comm != null) {
+			candidates = comm.inRange(this);
+		} else {
+			Collection<SmartVehicle> inRange = neighbours(getRoadModel());
+			inRange.remove(this);
+			candidates = inRange;
+		}
+		if (tuning.deltaSync) {
+			syncBids(candidates);
+			return;
+		}
+		if (candidates.isEmpty())
 			return;
-		BidMessage bid = commBids.yoink();
-		if (bid != null && cm != null) {
-			cm.broadcast(bid);
-			for (SmartVehicle receiver : receivers) {
-				commWith.put(receiver, 0);
+		Message message;
+		int occupancy;
+		if (tuning.bundleSize > 1) {
+			List<BidMessage> bids = bundle(tuning.bundleSize);
+			message = bids.isEmpty() ? null : new BidBundle(this, bids);
+			occupancy = bids.size();
+		} else {
+			message = commBids.yoink();
+			occupancy = 1;
+		}
+		if (message != null)
+			outgoing.add(new Outgoing(message, candidates, occupancy, null));
+	}
+
+	/**
+	 * Yoink up to size bids to broadcast as one bundle, each parcel at most
+	 * once.
+	 */
+	List<BidMessage> bundle(int size) {
+		List<BidMessage> bids = new ArrayList<BidMessage>(size);
+		Set<Parcel> bundled = new HashSet<Parcel>();
+		while (bids.size() < size && bids.size() < commBids.size()) {
+			BidMessage bid = commBids.yoink();
+			// Stop when the ring wrapped around.
+			if (bid == null || !bundled.add(bid.getParcel()))
+				break;
+			bids.add(bid);
+		}
+		return bids;
+	}
+
+	void flushBids() {
+		for (Outgoing out : outgoing) {
+			Collection<? extends CommunicationUser> receivers = out.recipients;
+			if (comm != null)
+				receivers = comm.broadcast(out.message, out.recipients);
+			else if (out.vector != null)
+				cm.send(out.recipients.iterator().next(), out.message);
+			else
+				cm.broadcast(out.message);
+			stats.recordSent(out.occupancy);
+			for (CommunicationUser receiver : receivers) {
+				if (receiver instanceof SmartVehicle)
+					contact((SmartVehicle) receiver);
 			}
+			if (out.vector != null && !receivers.isEmpty())
+				synced(out.vector, out.message);
 		}
+		outgoing.clear();
 	}
 
 	@Override
 	public void receive(Message message) {
-		commCounter++;
-		try {
-			BidMessage bidMessage = (BidMessage) message;
-			if (!vanishedParcels.contains(bidMessage.getParcel()))
-				commBids.ensconce(bidMessage);
-			vanishedParcels.addAll(bidMessage.getVanished());
-		} catch (ClassCastException cce) {
-			cce.printStackTrace();
+		mailbox.offer(message);
+	}
+
+	/**
+	 * Apply the received messages in one batch, the heap of the BidStore is
+	 * restored by the rekey that follows.
+	 */
+	private void drainMailbox() {
+		if (mailbox.isEmpty())
+			return;
+		commBids.startBatch();
+		Message message;
+		while ((message = mailbox.poll()) != null) {
+			commCounter++;
+			try {
+				if (message instanceof BidBundle) {
+					for (BidMessage bidMessage : ((BidBundle) message)
+							.getBids()) {
+						receive(bidMessage);
+					}
+				} else {
+					receive((BidMessage) message);
+				}
+			} catch (ClassCastException cce) {
+				cce.printStackTrace();
+			}
 		}
 	}
 
+	private void receive(BidMessage bidMessage) {
+		int id = bidMessage.getParcelId();
+		if (!vanishedParcels.get(id) && commBids.ensconce(bidMessage)
+				&& bidMessage.getOriginalSender() != this
+				&& tuning.incrementalRebid())
+			dirtyBids.add(bidMessage.getParcel());
+		if (bidMessage.getVanished().mergeInto(vanishedParcels))
+			vanishedChanged = true;
+	}
+
+	void setContactGraph(ContactGraph graph) {
+		contactGraph = graph;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If the vehicle was not registered with a ParcelRegistry,
+	 *             smart vehicles cannot work without one.
+	 */
+	ParcelRegistry getParcelRegistry() {
+		if (parcelRegistry == null)
+			throw new IllegalStateException(
+					"Smart vehicles need a ParcelRegistry model");
+		return parcelRegistry;
+	}
+
+	void setParcelRegistry(ParcelRegistry registry) {
+		parcelRegistry = registry;
+	}
+
 	@Override
 	public void setCommunicationAPI(CommunicationAPI api) {
 		cm = api;
+		comm = api instanceof LocalCommunicationModel ? (LocalCommunicationModel) api
+				: null;
 	}
 
 	@Override
@@ -264,53 +718,153 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 		return commReliability;
 	}
 
-	private void incrementCommWith() {
-		Iterator<SmartVehicle> it = commWith.keySet().iterator();
+	/**
+	 * Prepare for every neighbour only the bids it has no current copy of,
+	 * one message per neighbour. The version vector of a neighbour is only
+	 * updated when the message reached it.
+	 */
+	void syncBids(Collection<? extends CommunicationUser> candidates) {
+		for (CommunicationUser candidate : candidates) {
+			if (!(candidate instanceof SmartVehicle))
+				continue;
+			SmartVehicle neighbour = (SmartVehicle) candidate;
+			VersionVector vector = versionVectors.get(neighbour);
+			if (vector == null) {
+				vector = new VersionVector();
+				versionVectors.put(neighbour, vector);
+			}
+			vector.seen = ticks;
+			List<BidMessage> bids = commBids.delta(vector.synced, ticks,
+					neighbour);
+			if (bids.isEmpty())
+				continue;
+			Message message = bids.size() == 1 ? bids.get(0) : new BidBundle(
+					this, bids);
+			outgoing.add(new Outgoing(message, Collections
+					.singletonList(neighbour), bids.size(), vector.synced));
+		}
+		// Whatever a neighbour that left got from us has expired by now.
+		Iterator<VersionVector> it = versionVectors.values().iterator();
 		while (it.hasNext()) {
-			SmartVehicle key = it.next();
-			commWith.put(key, commWith.get(key) + 1);
-
+			if (ticks - it.next().seen > TTL)
+				it.remove();
 		}
 	}
 
-	private void refreshCommWith() {
-		Iterator<SmartVehicle> it = commWith.keySet().iterator();
-		while (it.hasNext()) {
-			SmartVehicle key = it.next();
-			if (commWith.get(key) > 100) {
-				it.remove();
+	/**
+	 * Whether this vehicle still keeps a version vector for neighbour.
+	 */
+	boolean syncsWith(SmartVehicle neighbour) {
+		return versionVectors.containsKey(neighbour);
+	}
+
+	private void synced(Map<Parcel, Synced> vector, Message message) {
+		List<BidMessage> bids = message instanceof BidBundle ? ((BidBundle) message)
+				.getBids() : Collections.singletonList((BidMessage) message);
+		for (BidMessage bid : bids) {
+			Synced synced = vector.get(bid.getParcel());
+			if (synced == null) {
+				synced = new Synced();
+				vector.put(bid.getParcel(), synced);
 			}
+			synced.version = commBids.version(bid.getParcel());
+			synced.tick = ticks;
 		}
 	}
 
+	private void contact(SmartVehicle receiver) {
+		Long last = commWith.put(receiver, ticks);
+		if (contactGraph != null && (last == null || expired(last)))
+			contactGraph.contact(this, receiver);
+	}
+
+	private boolean expired(long contact) {
+		return ticks - contact > CONTACT_TICKS;
+	}
+
 	public String getNoReceived() {
 		return "" + commCounter;
 	}
 
+	/**
+	 * The vehicles this vehicle sent a bid to in the last CONTACT_TICKS
+	 * ticks. A copy, the renderer reads it from another thread while
+	 * contact adds to commWith.
+	 */
 	public Set<SmartVehicle> getCommunicatedWith() {
-		return new HashSet<SmartVehicle>(commWith.keySet());
+		Set<SmartVehicle> recent = new HashSet<SmartVehicle>();
+		for (Map.Entry<SmartVehicle, Long> contact : commWith.entrySet()) {
+			if (!expired(contact.getValue()))
+				recent.add(contact.getKey());
+		}
+		return recent;
+	}
+
+	/**
+	 * A message prepared by decide. Vector is the version vector of the
+	 * single recipient for delta sync, otherwise null.
+	 */
+	private static class Outgoing {
+		private final Message message;
+		private final Collection<? extends CommunicationUser> recipients;
+		private final int occupancy;
+		private final Map<Parcel, Synced> vector;
+
+		private Outgoing(Message message,
+				Collection<? extends CommunicationUser> recipients,
+				int occupancy, Map<Parcel, Synced> vector) {
+			this.message = message;
+			this.recipients = recipients;
+			this.occupancy = occupancy;
+			this.vector = vector;
+		}
+	}
+
+	/**
+	 * The bids a neighbour received from this vehicle and the last tick it
+	 * was in range, see syncBids.
+	 */
+	private static class VersionVector {
+		private final Map<Parcel, Synced> synced = new HashMap<Parcel, Synced>();
+		private long seen;
 	}
 
+	/**
+	 * What a neighbour last received of a bid, see syncBids.
+	 */
+	private static class Synced {
+		private long version;
+		private long tick;
+	}
+
+	/**
+	 * Bids are immutable, so one broadcast object can safely end up in the
+	 * BidStore of every receiver. Forwarding creates a copy with a lower TTL.
+	 */
 	public class BidMessage extends Message {
-		private Parcel parcel;
-		private double bid;
-		private int ttl;
+		private final Parcel parcel;
+		/**
+		 * Id of the parcel in the registry of the sender, -1 without one.
+		 */
+		private final int parcelId;
+		private final double bid;
+		private final int ttl;
 		private final long tiebreaker;
 		private final Point position;
 		private final CommunicationUser originalSender;
-		private final List<Parcel> vanished;
+		private final ParcelDigest vanished;
 
 		public BidMessage(CommunicationUser sender, Parcel parcel, double bid,
 				int timeToLive) {
 			super(sender);
 			this.originalSender = sender;
 			this.parcel = parcel;
+			this.parcelId = parcelId(parcel);
 			this.bid = bid;
 			this.ttl = timeToLive;
-			this.tiebreaker = new MersenneTwister(SmartVehicle.this.hashCode()
-					+ parcel.hashCode()).nextLong();
+			this.tiebreaker = tiebreaker(parcelId);
 			this.position = getRoadModel().getPosition(parcel);
-			this.vanished = new LinkedList<Parcel>(vanishedDiscoveries);
+			this.vanished = vanishedDigest();
 		}
 
 		public BidMessage(CommunicationUser sender, Parcel parcel, double bid,
@@ -318,21 +872,22 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 			super(sender);
 			this.originalSender = sender;
 			this.parcel = parcel;
+			this.parcelId = parcelId(parcel);
 			this.bid = bid;
 			this.ttl = timeToLive;
-			this.tiebreaker = new MersenneTwister(SmartVehicle.this.hashCode()
-					+ parcel.hashCode()).nextLong();
+			this.tiebreaker = tiebreaker(parcelId);
 			this.position = position;
-			this.vanished = new LinkedList<Parcel>(vanishedDiscoveries);
+			this.vanished = vanishedDigest();
 		}
 
 		private BidMessage(CommunicationUser sender,
-				CommunicationUser originalSender, Parcel parcel, double bid,
-				int timeToLive, long tiebreaker, Point position,
-				List<Parcel> vanished) {
+				CommunicationUser originalSender, Parcel parcel, int parcelId,
+				double bid, int timeToLive, long tiebreaker, Point position,
+				ParcelDigest vanished) {
 			super(sender);
 			this.originalSender = originalSender;
 			this.parcel = parcel;
+			this.parcelId = parcelId;
 			this.bid = bid;
 			this.ttl = timeToLive;
 			this.tiebreaker = tiebreaker;
@@ -354,6 +909,10 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 			return parcel;
 		}
 
+		public int getParcelId() {
+			return parcelId;
+		}
+
 		public double getBid() {
 			return bid;
 		}
@@ -362,10 +921,6 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 			return ttl;
 		}
 
-		public void decrementTtl() {
-			ttl--;
-		}
-
 		public long getTiebreaker() {
 			return tiebreaker;
 		}
@@ -374,153 +929,615 @@ class SmartVehicle extends LocalVehicle implements CommunicationUser {
 			return position;
 		}
 
-		public List<Parcel> getVanished() {
+		public ParcelDigest getVanished() {
 			return vanished;
 		}
 
-		public BidMessage copy(CommunicationUser newSender) {
-			return new BidMessage(newSender, originalSender, parcel, bid, ttl,
-					tiebreaker, position, vanished);
+		public BidMessage forward(CommunicationUser newSender) {
+			return new BidMessage(newSender, originalSender, parcel, parcelId,
+					bid, ttl - 1, tiebreaker, position, vanished);
+		}
+
+	}
+
+	/**
+	 * Several bids broadcast as one message, see SmartTuning.bundleSize.
+	 */
+	public static class BidBundle extends Message {
+		private final List<BidMessage> bids;
+
+		public BidBundle(CommunicationUser sender, List<BidMessage> bids) {
+			super(sender);
+			this.bids = ImmutableList.copyOf(bids);
 		}
 
+		public List<BidMessage> getBids() {
+			return bids;
+		}
 	}
 
 	public class BidStore {
-		private final Map<Parcel, BidMessage> bids = new HashMap<Parcel, BidMessage>();
-		private final LinkedList<BidMessage> queue = new LinkedList<BidMessage>();
-		private final PriorityQueue<BidMessage> pqueue = new PriorityQueue<BidMessage>(
-				11, new Comparator<BidMessage>() {
-
-					@Override
-					public int compare(BidMessage o1, BidMessage o2) {
-						// Reverse ordering
-						if (o1.getBid() > o2.getBid())
-							return -1;
-						else if (o1.getBid() < o2.getBid())
-							return 1;
-						else {
-							PDPModel pm = getPDPModel();
-							Point o1Location = o1.getPosition();
-							Point o2Location = o2.getPosition();
-
-							if (pm.containerContains(SmartVehicle.this,
-									o1.getParcel()))
-								o1Location = o1.getParcel().getDestination();
-							if (pm.containerContains(SmartVehicle.this,
-									o2.getParcel()))
-								o2Location = o2.getParcel().getDestination();
-
-							double o1Distance = Point.distance(getPosition(),
-									o1Location);
-							double o2Distance = Point.distance(getPosition(),
-									o2Location);
-
-							if (o1Distance < o2Distance)
-								return -1;
-							else if (o1Distance > o2Distance)
-								return 1;
-							else
-								return 0;
-						}
-					}
-				});
+		private final Map<Parcel, Entry> entries = new HashMap<Parcel, Entry>();
+		/**
+		 * The same entries, indexed by the original sender of their bid.
+		 */
+		private final Map<CommunicationUser, SenderIndex> senders = new HashMap<CommunicationUser, SenderIndex>();
+		/**
+		 * Binary heap on the bids, every entry remembers its own index so it
+		 * can be updated or removed without searching for it.
+		 */
+		private final ArrayList<Entry> heap = new ArrayList<Entry>();
+		/**
+		 * Marks the end of a lap of the broadcast ring. Every bid in the ring
+		 * is yoinked once per lap, so a bid's TTL tells in which lap it
+		 * expires.
+		 */
+		private final Entry lapMarker = new Entry(null);
+		/**
+		 * Head of the circular broadcast ring, the next bid to be yoinked.
+		 */
+		private Entry ring = lapMarker;
+		private long lap = 0;
+		/**
+		 * Counts stores and updates, to tell the age of bids.
+		 */
+		private long clock = 0;
+		/**
+		 * Simulation time of the last rekey.
+		 */
+		private long now = 0;
+		/**
+		 * Hashed timing wheel, bucket lap % WHEEL_SIZE holds the bids that
+		 * expire in that lap or a multiple of WHEEL_SIZE laps later.
+		 */
+		private final Entry[] wheel = new Entry[WHEEL_SIZE];
+		private static final int WHEEL_SIZE = 16;
+		/**
+		 * While set the heap is not kept in order, see startBatch.
+		 */
+		private boolean batch = false;
+
+		public BidStore() {
+			lapMarker.prev = lapMarker;
+			lapMarker.next = lapMarker;
+		}
+		/**
+		 * Highest bid first, ties go to the closest location. Both are
+		 * precomputed keys, see rekey.
+		 */
+		private final Comparator<Entry> order = new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				// Reverse ordering
+				if (o1.value > o2.value)
+					return -1;
+				else if (o1.value < o2.value)
+					return 1;
+				else if (o1.distance < o2.distance)
+					return -1;
+				else if (o1.distance > o2.distance)
+					return 1;
+				else
+					return 0;
+			}
+		};
 
-		public void ensconce(BidMessage bidMessage) {
+		/**
+		 * @return Whether the bid was stored.
+		 */
+		public boolean ensconce(BidMessage bidMessage) {
 			Parcel parcel = bidMessage.getParcel();
-			if (bids.containsKey(parcel)) {
-				final BidMessage oldBid = bids.get(parcel);
-				if (bidMessage.getBid() > oldBid.getBid()) {
-					purge(oldBid);
-					queue.offer(bidMessage);
-					pqueue.offer(bidMessage);
-					bids.put(parcel, bidMessage);
-				} else if (bidMessage.getBid() == oldBid.getBid()
-						&& bidMessage.getTiebreaker() > oldBid.getTiebreaker()) {
-					queue.set(queue.indexOf(oldBid), bidMessage);
-					pqueue.remove(oldBid);
-					pqueue.offer(bidMessage);
-					bids.put(parcel, bidMessage);
-				} else if (bidMessage.getOriginalSender() == oldBid
-						.getOriginalSender()) {
-					queue.set(queue.indexOf(oldBid), bidMessage);
-					pqueue.remove(oldBid);
-					pqueue.offer(bidMessage);
-					bids.put(parcel, bidMessage);
+			final Entry entry = entries.get(parcel);
+			if (entry == null) {
+				Entry inserted = insert(bidMessage);
+				Entry victim = null;
+				if (entries.size() > tuning.storeCapacity) {
+					victim = victim();
+					remove(victim);
+					stats.recordEviction();
 				}
+				stats.recordStoreSize(entries.size());
+				return victim != inserted;
+			}
+			final BidMessage oldBid = entry.bid;
+			if (bidMessage.getBid() > oldBid.getBid()) {
+				// A better bid starts over at the back of the ring.
+				unlink(entry);
+				link(entry);
+				update(entry, bidMessage);
+			} else if (bidMessage.getBid() == oldBid.getBid()
+					&& bidMessage.getTiebreaker() > oldBid.getTiebreaker()) {
+				update(entry, bidMessage);
+			} else if (bidMessage.getOriginalSender() == oldBid
+					.getOriginalSender()) {
+				update(entry, bidMessage);
 			} else {
-				queue.offer(bidMessage);
-				pqueue.offer(bidMessage);
-				bids.put(parcel, bidMessage);
+				return false;
 			}
+			return true;
+		}
+
+		public int size() {
+			return entries.size();
 		}
 
 		public Collection<Parcel> getParcels() {
-			return bids.keySet();
+			return entries.keySet();
 		}
 
 		public Collection<BidMessage> getBids() {
-			return bids.values();
+			return Collections2.transform(entries.values(),
+					new Function<Entry, BidMessage>() {
+						@Override
+						public BidMessage apply(Entry entry) {
+							return entry.bid;
+						}
+					});
 		}
 
-		public Set<BidMessage> senderMessages(CommunicationUser originalSender) {
-			Set<BidMessage> sendersBids = new HashSet<SmartVehicle.BidMessage>();
-			for (BidMessage bid : bids.values()) {
-				if (bid.getOriginalSender() == originalSender) {
-					sendersBids.add(bid);
-				}
-			}
-			return sendersBids;
+		/**
+		 * Read-only view on the bids of originalSender, it follows the changes
+		 * to the store. Copy it before purging while iterating.
+		 */
+		public Collection<BidMessage> senderMessages(
+				CommunicationUser originalSender) {
+			return senderIndex(originalSender).messages;
 		}
 
+		/**
+		 * Read-only view on the parcels originalSender is bidding on.
+		 */
 		public Set<Parcel> senderParcels(CommunicationUser originalSender) {
-			Set<Parcel> sendersBids = new HashSet<Parcel>();
-			for (BidMessage bid : bids.values()) {
-				if (bid.getOriginalSender() == originalSender) {
-					sendersBids.add(bid.getParcel());
-				}
-			}
-			return sendersBids;
+			return senderIndex(originalSender).parcels;
 		}
 
+		/**
+		 * Changes whenever a parcel is added to or removed from the parcels
+		 * originalSender is bidding on, but not when only the bids change.
+		 */
+		public long senderVersion(CommunicationUser originalSender) {
+			return senderIndex(originalSender).version;
+		}
+
+		/**
+		 * The best nrFutures bids, from highest to lowest, read from the heap
+		 * without modifying it. Only the frontier of the heap that can still
+		 * hold the next best bid is kept, so this costs O(k log k).
+		 */
 		public LinkedList<BidMessage> futures(CommunicationUser sender,
 				int nrFutures) {
 			LinkedList<BidMessage> futures = new LinkedList<BidMessage>();
-			for (int i = 0; i < Math.min(nrFutures, pqueue.size()); i++) {
-				futures.add(pqueue.poll());
+			if (heap.isEmpty() || nrFutures <= 0)
+				return futures;
+			PriorityQueue<Entry> frontier = new PriorityQueue<Entry>(
+					Math.min(nrFutures, heap.size()) + 1, order);
+			frontier.offer(heap.get(0));
+			while (futures.size() < nrFutures && !frontier.isEmpty()) {
+				Entry entry = frontier.poll();
+				futures.add(entry.bid);
+				int child = 2 * entry.index + 1;
+				if (child < heap.size())
+					frontier.offer(heap.get(child));
+				if (child + 1 < heap.size())
+					frontier.offer(heap.get(child + 1));
 			}
-			pqueue.addAll(futures);
 
 			return futures;
 		}
 
+		/**
+		 * Delta sync bypasses the ring, instead one lap passes per tick so
+		 * bids expire TTL ticks after their last update.
+		 */
+		public void advanceLap() {
+			lap++;
+			expire();
+		}
+
+		/**
+		 * The bids, forwarded by this vehicle, of which a neighbour with the
+		 * given version vector has no copy, an outdated one or one that is
+		 * about to expire. Bids that would be forwarded with a negative TTL
+		 * and the bids of the neighbour itself are left out.
+		 */
+		public List<BidMessage> delta(Map<Parcel, Synced> vector, long tick,
+				CommunicationUser neighbour) {
+			List<BidMessage> delta = new ArrayList<BidMessage>();
+			for (Entry entry : heap) {
+				int ttl = entry.bid.getTtl();
+				if (ttl <= 0 || entry.bid.getOriginalSender() == neighbour)
+					continue;
+				Synced synced = vector.get(entry.bid.getParcel());
+				if (synced == null || synced.version != entry.version
+						|| tick - synced.tick >= Math.max(1, ttl - 1))
+					delta.add(entry.bid.forward(SmartVehicle.this));
+			}
+			return delta;
+		}
+
+		/**
+		 * The version of the stored bid on parcel, it changes whenever the
+		 * bid or its original sender changes.
+		 */
+		public long version(Parcel parcel) {
+			Entry entry = entries.get(parcel);
+			return entry == null ? -1 : entry.version;
+		}
+
 		public BidMessage yoink() {
-			BidMessage bid = queue.poll();
-			if (bid == null)
-				return null;
-			bid.decrementTtl();
-			if (bid.getTtl() >= 0)
-				queue.offer(bid);
-			else {
-				purge(bid);
-				return yoink();
+			while (!entries.isEmpty()) {
+				Entry entry = ring;
+				// Advancing the head puts this entry at the back of the ring.
+				ring = entry.next;
+				if (entry == lapMarker) {
+					lap++;
+					expire();
+					continue;
+				}
+				BidMessage forwarded = entry.bid.forward(SmartVehicle.this);
+				if (forwarded.getTtl() < 0) {
+					// Only when its TTL was lowered halfway through a lap.
+					remove(entry);
+					continue;
+				}
+				entry.bid = forwarded;
+				entry.visitLap = lap + 1;
+				return forwarded;
 			}
-			return bid.copy(SmartVehicle.this);
+			return null;
 		}
 
 		public void purge(BidMessage target) {
-			bids.remove(target.getParcel());
-			queue.remove(target);
-			pqueue.remove(target);
+			purge(target.getParcel());
 		}
 
 		public void purge(Parcel target) {
-			purge(bids.get(target));
+			Entry entry = entries.get(target);
+			if (entry != null)
+				remove(entry);
 		}
 
 		public Point position(Parcel parcel) {
-			if (bids.containsKey(parcel))
-				return bids.get(parcel).getPosition();
+			Entry entry = entries.get(parcel);
+			if (entry != null)
+				return entry.bid.getPosition();
 			return null;
 		}
+
+		/**
+		 * The bid held on parcel, null if there is none.
+		 */
+		public BidMessage get(Parcel parcel) {
+			Entry entry = entries.get(parcel);
+			if (entry != null)
+				return entry.bid;
+			return null;
+		}
+
+		/**
+		 * Recompute the ordering keys of all bids for the current position and
+		 * cargo and restore the heap in O(n).
+		 */
+		public void rekey(long time) {
+			now = time;
+			for (Entry entry : heap) {
+				key(entry);
+			}
+			for (int i = (heap.size() >>> 1) - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+			batch = false;
+		}
+
+		/**
+		 * Stop restoring the heap after every change until the next rekey,
+		 * which orders it in one go.
+		 */
+		public void startBatch() {
+			batch = true;
+		}
+
+		private void key(Entry entry) {
+			BidMessage bid = entry.bid;
+			Point location = bid.getPosition();
+			if (inCargo(bid.getParcel()))
+				location = bid.getParcel().getDestination();
+			entry.value = bid.getBid();
+			entry.distance = Point.distance(getPosition(), location);
+		}
+
+		private Entry insert(BidMessage bidMessage) {
+			Entry entry = new Entry(bidMessage);
+			entry.stamp = clock++;
+			entry.version = clock;
+			key(entry);
+			entries.put(bidMessage.getParcel(), entry);
+			senderIndex(bidMessage.getOriginalSender()).put(
+					bidMessage.getParcel(), entry);
+			link(entry);
+			schedule(entry);
+			heapInsert(entry);
+			return entry;
+		}
+
+		private void update(Entry entry, BidMessage bidMessage) {
+			CommunicationUser oldSender = entry.bid.getOriginalSender();
+			if (oldSender != bidMessage.getOriginalSender()) {
+				senderIndex(oldSender).remove(bidMessage.getParcel());
+				senderIndex(bidMessage.getOriginalSender()).put(
+						bidMessage.getParcel(), entry);
+			}
+			if (bidMessage.getBid() != entry.bid.getBid()
+					|| oldSender != bidMessage.getOriginalSender())
+				entry.version = clock + 1;
+			entry.bid = bidMessage;
+			entry.stamp = clock++;
+			if (tuning.deltaSync)
+				entry.visitLap = lap + 1;
+			schedule(entry);
+			key(entry);
+			fix(entry.index);
+		}
+
+		private void remove(Entry entry) {
+			Parcel parcel = entry.bid.getParcel();
+			entries.remove(parcel);
+			senderIndex(entry.bid.getOriginalSender()).remove(parcel);
+			// The rebid state of a parcel is only kept while it has a bid,
+			// however the bid leaves the store.
+			rebidDeadlines.remove(parcel);
+			dirtyBids.remove(parcel);
+			unlink(entry);
+			unschedule(entry);
+			removeAt(entry.index);
+		}
+
+		/**
+		 * The bid to drop according to the eviction policy, this scans the
+		 * store and is only needed when it is full. There are no bids on our
+		 * own cargo to protect, they are purged at pickup and the parcel is
+		 * known to have vanished from then on, see discoverVanished.
+		 */
+		private Entry victim() {
+			Entry victim = null;
+			switch (tuning.evictionPolicy) {
+			case OLDEST:
+				for (Entry entry : heap) {
+					if (victim == null || entry.stamp < victim.stamp)
+						victim = entry;
+				}
+				return victim;
+			case FARTHEST:
+				for (Entry entry : heap) {
+					if (victim == null || entry.distance > victim.distance)
+						victim = entry;
+				}
+				return victim;
+			case CLOSED_WINDOW:
+				for (Entry entry : heap) {
+					if (entry.bid.getParcel().getPickupTimeWindow().end < now)
+						return entry;
+				}
+				// Fall through, nothing has closed yet.
+			case LOWEST_VALUE:
+			default:
+				// The lowest bid of a heap is one of its leaves, unless it
+				// is being batched.
+				int first = batch ? 0 : heap.size() >>> 1;
+				for (int i = first; i < heap.size(); i++) {
+					Entry entry = heap.get(i);
+					if (victim == null || order.compare(entry, victim) > 0)
+						victim = entry;
+				}
+				return victim;
+			}
+		}
+
+		private SenderIndex senderIndex(CommunicationUser originalSender) {
+			SenderIndex index = senders.get(originalSender);
+			if (index == null) {
+				index = new SenderIndex();
+				senders.put(originalSender, index);
+			}
+			return index;
+		}
+
+		/**
+		 * Insert at the back of the ring, right before its head. The lap
+		 * marker is always passed before the back of the ring is reached.
+		 */
+		private void link(Entry entry) {
+			entry.next = ring;
+			entry.prev = ring.prev;
+			ring.prev.next = entry;
+			ring.prev = entry;
+			entry.visitLap = lap + 1;
+		}
+
+		private void unlink(Entry entry) {
+			entry.prev.next = entry.next;
+			entry.next.prev = entry.prev;
+			if (ring == entry)
+				ring = entry.next;
+			entry.prev = null;
+			entry.next = null;
+		}
+
+		/**
+		 * A bid that is yoinked for the first time in lap visitLap is
+		 * forwarded TTL times and dropped in lap visitLap + TTL.
+		 */
+		private void schedule(Entry entry) {
+			long expiryLap = entry.visitLap + entry.bid.getTtl();
+			if (entry.wheelBucket >= 0 && expiryLap == entry.expiryLap)
+				return;
+			unschedule(entry);
+			entry.expiryLap = expiryLap;
+			entry.wheelBucket = (int) (expiryLap % WHEEL_SIZE);
+			entry.wheelNext = wheel[entry.wheelBucket];
+			if (entry.wheelNext != null)
+				entry.wheelNext.wheelPrev = entry;
+			wheel[entry.wheelBucket] = entry;
+		}
+
+		private void unschedule(Entry entry) {
+			if (entry.wheelBucket < 0)
+				return;
+			if (entry.wheelPrev == null)
+				wheel[entry.wheelBucket] = entry.wheelNext;
+			else
+				entry.wheelPrev.wheelNext = entry.wheelNext;
+			if (entry.wheelNext != null)
+				entry.wheelNext.wheelPrev = entry.wheelPrev;
+			entry.wheelPrev = null;
+			entry.wheelNext = null;
+			entry.wheelBucket = -1;
+		}
+
+		/**
+		 * Drop every bid whose TTL runs out in the lap that just started, they
+		 * would only be skipped when reached.
+		 */
+		private void expire() {
+			Entry entry = wheel[(int) (lap % WHEEL_SIZE)];
+			while (entry != null) {
+				Entry next = entry.wheelNext;
+				if (entry.expiryLap <= lap)
+					remove(entry);
+				entry = next;
+			}
+		}
+
+		/**
+		 * Whether every bid sits at the index it remembers and none is
+		 * ordered before its parent. Does not hold during a batch.
+		 */
+		boolean isHeap() {
+			if (heap.size() != entries.size())
+				return false;
+			for (int i = 0; i < heap.size(); i++) {
+				Entry entry = heap.get(i);
+				if (entry.index != i
+						|| entries.get(entry.bid.getParcel()) != entry)
+					return false;
+				if (i > 0 && order.compare(heap.get((i - 1) >>> 1), entry) > 0)
+					return false;
+			}
+			return true;
+		}
+
+		private void heapInsert(Entry entry) {
+			entry.index = heap.size();
+			heap.add(entry);
+			if (!batch)
+				siftUp(entry.index);
+		}
+
+		private void removeAt(int i) {
+			Entry last = heap.remove(heap.size() - 1);
+			if (i < heap.size()) {
+				heap.set(i, last);
+				last.index = i;
+				fix(i);
+			}
+		}
+
+		private void fix(int i) {
+			if (batch)
+				return;
+			if (siftUp(i) == i)
+				siftDown(i);
+		}
+
+		private int siftUp(int i) {
+			Entry entry = heap.get(i);
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				Entry p = heap.get(parent);
+				if (order.compare(entry, p) >= 0)
+					break;
+				heap.set(i, p);
+				p.index = i;
+				i = parent;
+			}
+			heap.set(i, entry);
+			entry.index = i;
+			return i;
+		}
+
+		private void siftDown(int i) {
+			Entry entry = heap.get(i);
+			int half = heap.size() >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				int right = child + 1;
+				if (right < heap.size()
+						&& order.compare(heap.get(right), heap.get(child)) < 0)
+					child = right;
+				Entry c = heap.get(child);
+				if (order.compare(entry, c) <= 0)
+					break;
+				heap.set(i, c);
+				c.index = i;
+				i = child;
+			}
+			heap.set(i, entry);
+			entry.index = i;
+		}
+
+		/**
+		 * A bid together with its place in the heap and the broadcast ring.
+		 */
+		private class Entry {
+			private BidMessage bid;
+			private int index;
+			private Entry prev;
+			private Entry next;
+			private double value;
+			private double distance;
+			private long stamp;
+			private long version;
+			private long visitLap;
+			private long expiryLap;
+			private int wheelBucket = -1;
+			private Entry wheelPrev;
+			private Entry wheelNext;
+
+			private Entry(BidMessage bid) {
+				this.bid = bid;
+			}
+		}
+
+		/**
+		 * Entries of one original sender, with views that are handed out
+		 * instead of copies.
+		 */
+		private class SenderIndex {
+			private final Map<Parcel, Entry> entries = new LinkedHashMap<Parcel, Entry>();
+			private final Collection<BidMessage> messages = Collections
+					.unmodifiableCollection(Collections2.transform(
+							entries.values(), new Function<Entry, BidMessage>() {
+								@Override
+								public BidMessage apply(Entry entry) {
+									return entry.bid;
+								}
+							}));
+			private final Set<Parcel> parcels = Collections
+					.unmodifiableSet(entries.keySet());
+			/**
+			 * Counts the parcels that joined or left, see senderVersion.
+			 */
+			private long version = 0;
+
+			private void put(Parcel parcel, Entry entry) {
+				entries.put(parcel, entry);
+				version++;
+			}
+
+			private void remove(Parcel parcel) {
+				if (entries.remove(parcel) != null)
+					version++;
+			}
+		}
 	}
 }
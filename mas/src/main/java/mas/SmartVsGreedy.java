@@ -116,7 +116,8 @@ public class SmartVsGreedy {
 										+ resource), resource).allowDiversion()
 						.parse().get(0);
 
-				ExperimentStats expStats = new ExperimentStats(objFunc);
+				ExperimentStats expStats = new ExperimentStats(objFunc,
+						configuration.getStatistics());
 				for (SimulationResult result : Experiment.build(objFunc)
 						.withRandomSeed(123).addConfiguration(configuration)
 						.addScenario(scenario).showGui(uic).repeat(1)
@@ -177,10 +178,13 @@ public class SmartVsGreedy {
 
 	private class ExperimentStats {
 		Gendreau06ObjectiveFunction gFunc;
+		SmartStatistics smartStats;
 		Collection<StatisticsDTO> statistics = new LinkedList<StatisticsDTO>();
 
-		public ExperimentStats(Gendreau06ObjectiveFunction gFunc) {
+		public ExperimentStats(Gendreau06ObjectiveFunction gFunc,
+				SmartStatistics smartStats) {
 			this.gFunc = gFunc;
+			this.smartStats = smartStats;
 		}
 
 		public void addStats(StatisticsDTO stats) {
@@ -278,7 +282,8 @@ public class SmartVsGreedy {
 					+ ", \"gTardiness\" : " + getGTardiness()
 					+ ", \"gOverTime\" : " + getGOverTime()
 					+ ", \"gTravelTime\" : " + getGTravelTime()
-					+ ", \"gCost\" : " + getGCost() + "}";
+					+ ", \"gCost\" : " + getGCost() + ", \"smart\" : "
+					+ smartStats + "}";
 			return json;
 		}
 	}
@@ -1,5 +1,6 @@
 package mas;
 
+import java.util.Arrays;
 import java.util.Collection;
 
 import mas.SmartVehicle.BidStore;
@@ -16,4 +17,18 @@ public class TrivialValueStrategy implements ValueStrategy {
 			Collection<Parcel> cargo, Parcel parcel) {
 		return 10;
 	}
+
+	@Override
+	public void assignAll(SmartVehicle thisVehicle, PDPModel pm, RoadModel rm,
+			TimeLapse time, BidStore commBids, Point position,
+			Collection<Parcel> cargo, Parcel[] parcels, int count,
+			double[] values) {
+		Arrays.fill(values, 0, count, 10);
+	}
+
+	@Override
+	public double upperBound(SmartVehicle thisVehicle, PDPModel pm,
+			TimeLapse time, int cargoSize, Parcel parcel) {
+		return 10;
+	}
 }
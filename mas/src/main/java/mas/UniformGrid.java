@@ -0,0 +1,178 @@
+package mas;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import rinde.sim.core.graph.Point;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Spatial hash of objects on the plane in square cells. Radius queries only
+ * visit the cells that overlap the circle, nearest queries search rings of
+ * cells outward until nothing closer can be found.
+ */
+class UniformGrid<T> {
+
+	private final double cellSize;
+	private final Map<Long, List<Slot<T>>> cells = new HashMap<Long, List<Slot<T>>>();
+	private final Map<T, Slot<T>> slots = new IdentityHashMap<T, Slot<T>>();
+	// Bounding box of all cells ever used, limits the nearest search.
+	private int minX = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE;
+	private int minY = Integer.MAX_VALUE;
+	private int maxY = Integer.MIN_VALUE;
+
+	UniformGrid(double cellSize) {
+		this.cellSize = cellSize > 0 ? cellSize : 1;
+	}
+
+	void put(T object, Point position) {
+		int x = cell(position.x);
+		int y = cell(position.y);
+		long key = key(x, y);
+		Slot<T> slot = slots.get(object);
+		if (slot == null) {
+			slot = new Slot<T>(object);
+			slots.put(object, slot);
+		} else if (slot.cell != key) {
+			cells.get(slot.cell).remove(slot);
+		} else {
+			slot.position = position;
+			return;
+		}
+		slot.position = position;
+		slot.cell = key;
+		List<Slot<T>> cell = cells.get(key);
+		if (cell == null) {
+			cell = new ArrayList<Slot<T>>();
+			cells.put(key, cell);
+		}
+		cell.add(slot);
+		minX = Math.min(minX, x);
+		maxX = Math.max(maxX, x);
+		minY = Math.min(minY, y);
+		maxY = Math.max(maxY, y);
+	}
+
+	boolean remove(T object) {
+		Slot<T> slot = slots.remove(object);
+		if (slot == null)
+			return false;
+		cells.get(slot.cell).remove(slot);
+		return true;
+	}
+
+	/**
+	 * The objects strictly within radius of center that satisfy filter.
+	 */
+	List<T> within(Point center, double radius, Predicate<? super T> filter) {
+		List<T> found = new ArrayList<T>();
+		int x1 = cell(center.x + radius);
+		int y1 = cell(center.y + radius);
+		double radius2 = radius * radius;
+		for (int x = cell(center.x - radius); x <= x1; x++) {
+			for (int y = cell(center.y - radius); y <= y1; y++) {
+				List<Slot<T>> cell = cells.get(key(x, y));
+				if (cell == null)
+					continue;
+				for (Slot<T> slot : cell) {
+					if (slot.distance2(center) < radius2
+							&& filter.apply(slot.object))
+						found.add(slot.object);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * The k objects closest to center that satisfy filter, closest first.
+	 */
+	List<T> nearest(final Point center, int k, Predicate<? super T> filter) {
+		if (k <= 0 || slots.isEmpty())
+			return new ArrayList<T>();
+		// Farthest of the best k on top.
+		PriorityQueue<Slot<T>> best = new PriorityQueue<Slot<T>>(k + 1,
+				new Comparator<Slot<T>>() {
+					@Override
+					public int compare(Slot<T> o1, Slot<T> o2) {
+						return Double.compare(o2.distance2(center),
+								o1.distance2(center));
+					}
+				});
+		int cx = cell(center.x);
+		int cy = cell(center.y);
+		int rings = Math.max(Math.max(cx - minX, maxX - cx),
+				Math.max(cy - minY, maxY - cy));
+		for (int ring = 0; ring <= rings; ring++) {
+			for (int x = cx - ring; x <= cx + ring; x++) {
+				offer(best, k, center, key(x, cy - ring), filter);
+				if (ring > 0)
+					offer(best, k, center, key(x, cy + ring), filter);
+			}
+			for (int y = cy - ring + 1; y < cy + ring; y++) {
+				offer(best, k, center, key(cx - ring, y), filter);
+				offer(best, k, center, key(cx + ring, y), filter);
+			}
+			// Cells further out are at least ring cells away.
+			double reach = ring * cellSize;
+			if (best.size() == k
+					&& best.peek().distance2(center) <= reach * reach)
+				break;
+		}
+		List<T> found = new ArrayList<T>(best.size());
+		while (!best.isEmpty()) {
+			found.add(best.poll().object);
+		}
+		Collections.reverse(found);
+		return found;
+	}
+
+	private void offer(PriorityQueue<Slot<T>> best, int k, Point center,
+			long key, Predicate<? super T> filter) {
+		List<Slot<T>> cell = cells.get(key);
+		if (cell == null)
+			return;
+		for (Slot<T> slot : cell) {
+			if (best.size() < k) {
+				if (filter.apply(slot.object))
+					best.offer(slot);
+			} else if (slot.distance2(center) < best.peek().distance2(center)
+					&& filter.apply(slot.object)) {
+				best.poll();
+				best.offer(slot);
+			}
+		}
+	}
+
+	private int cell(double coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	private static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xffffffffL);
+	}
+
+	private static class Slot<T> {
+		private final T object;
+		private Point position;
+		private long cell;
+
+		private Slot(T object) {
+			this.object = object;
+		}
+
+		private double distance2(Point point) {
+			double dx = position.x - point.x;
+			double dy = position.y - point.y;
+			return dx * dx + dy * dy;
+		}
+	}
+}
@@ -15,4 +15,23 @@ public interface ValueStrategy {
 			TimeLapse time, BidStore commBids, Point position,
 			Collection<Parcel> cargo, Parcel parcel);
 
+	/**
+	 * Assign the first count parcels for the same vehicle, position, cargo and
+	 * time in one go, values[i] gets the value of parcels[i]. Implementations
+	 * should not allocate.
+	 */
+	void assignAll(SmartVehicle thisVehicle, PDPModel pm, RoadModel rm,
+			TimeLapse time, BidStore commBids, Point position,
+			Collection<Parcel> cargo, Parcel[] parcels, int count,
+			double[] values);
+
+	/**
+	 * A cheap upper bound on assign for any position and any cargo of
+	 * cargoSize parcels that holds the current cargo of the vehicle, given the
+	 * same vehicle, time and parcel. Values and bounds are never negative,
+	 * Double.POSITIVE_INFINITY when there is no useful bound.
+	 */
+	double upperBound(SmartVehicle thisVehicle, PDPModel pm, TimeLapse time,
+			int cargoSize, Parcel parcel);
+
 }
@@ -0,0 +1,84 @@
+package mas;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one pool of worker threads in the JVM, one per processor, shared by the
+ * ParallelTicker and the parallel scoring of BestFutureSelection so they never
+ * run more threads than there are processors between them. Idle workers time
+ * out, so the pool does not linger after the simulations are done.
+ */
+final class Workers {
+
+	private static ThreadPoolExecutor pool;
+
+	private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<Boolean>() {
+		@Override
+		protected Boolean initialValue() {
+			return false;
+		}
+	};
+
+	private Workers() {
+	}
+
+	static int size() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Whether the calling thread is one of the workers. Tasks that run on a
+	 * worker do their work inline instead of waiting on the pool, which could
+	 * otherwise be waiting on them.
+	 */
+	static boolean isWorker() {
+		return WORKER.get();
+	}
+
+	/**
+	 * Run the tasks on the workers and wait until all of them are done.
+	 */
+	static void invokeAll(List<? extends Callable<Void>> tasks) {
+		try {
+			for (Future<Void> future : pool().invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor pool() {
+		if (pool == null) {
+			int threads = size();
+			pool = new ThreadPoolExecutor(threads, threads, 1,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(final Runnable r) {
+							Thread thread = new Thread(new Runnable() {
+								@Override
+								public void run() {
+									WORKER.set(true);
+									r.run();
+								}
+							}, "Workers");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			pool.allowCoreThreadTimeOut(true);
+		}
+		return pool;
+	}
+}
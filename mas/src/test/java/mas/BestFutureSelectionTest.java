@@ -0,0 +1,130 @@
+package mas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import mas.SmartVehicle.BidMessage;
+
+import org.junit.Test;
+
+import rinde.sim.core.TimeLapse;
+import rinde.sim.core.TimeLapses;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.pdp.DefaultPDPModel;
+import rinde.sim.core.model.pdp.PDPModel;
+import rinde.sim.core.model.pdp.Parcel;
+import rinde.sim.core.model.road.RoadModel;
+
+import com.google.common.base.Optional;
+
+public class BestFutureSelectionTest {
+
+	/**
+	 * Bounded scoring prunes candidates but must select the same parcel as
+	 * scoring every candidate, on stores that hold the same bids.
+	 */
+	@Test
+	public void boundedScoringSelectsTheSameParcel() {
+		Random rng = new Random(5);
+		long pruned = 0;
+		for (int round = 0; round < 300; round++) {
+			Point position = point(rng);
+			PDPModel pm = new DefaultPDPModel();
+			BestFutureSelection plainSelect = new BestFutureSelection()
+					.withSampledBackers();
+			BestFutureSelection boundedSelect = new BestFutureSelection()
+					.withSampledBackers().withBoundedScoring();
+			SmartVehicle plain = TestVehicles.vehicle(position, plainSelect,
+					new SimpleValueStrategy(), pm);
+			SmartVehicle bounded = TestVehicles.vehicle(position,
+					boundedSelect, new SimpleValueStrategy(), pm);
+			long now = 100000000 + rng.nextInt(100000000);
+			for (int i = 1 + rng.nextInt(60); i > 0; i--) {
+				Point pickup = point(rng);
+				// Windows that started long ago give tight bounds.
+				Parcel parcel = TestVehicles.parcel(pickup, point(rng),
+						rng.nextInt((int) now));
+				// Distinct values, the order of the futures has no ties.
+				double value = rng.nextDouble();
+				plain.getCommBids().ensconce(
+						plain.new BidMessage(plain, parcel, value, 5, pickup));
+				bounded.getCommBids().ensconce(
+						bounded.new BidMessage(bounded, parcel, value, 5, pickup));
+			}
+			TimeLapse time = TimeLapses.at(now, 1000);
+			long seed = rng.nextLong();
+			assertSame("round " + round,
+					select(plainSelect, plain, position, pm, time, seed),
+					select(boundedSelect, bounded, position, pm, time, seed));
+			// One tick, so the average is the total.
+			bounded.getStatistics().recordRekey(0);
+			pruned += bounded.getStatistics().getCostPruned();
+		}
+		assertTrue("nothing was pruned", pruned > 0);
+	}
+
+	/**
+	 * Parallel scoring computes every sum exactly as score does, so the sums
+	 * are identical and the first of equal sums still wins. All sums tie
+	 * with the trivial value strategy.
+	 */
+	@Test
+	public void parallelScoringGivesTheSameSums() {
+		Random rng = new Random(9);
+		for (ValueStrategy value : new ValueStrategy[] {
+				new SimpleValueStrategy(), new TrivialValueStrategy() }) {
+			for (int round = 0; round < 50; round++) {
+				Point position = point(rng);
+				PDPModel pm = new DefaultPDPModel();
+				BestFutureSelection select = new BestFutureSelection();
+				SmartVehicle vehicle = TestVehicles.vehicle(position, select,
+						value, pm);
+				long now = 100000000 + rng.nextInt(100000000);
+				List<BidMessage> candidates = new ArrayList<BidMessage>();
+				Parcel[] backers = new Parcel[rng.nextInt(40)];
+				for (int i = 0; i < backers.length; i++) {
+					Point pickup = point(rng);
+					backers[i] = TestVehicles.parcel(pickup, point(rng),
+							rng.nextInt((int) now));
+					BidMessage bid = vehicle.new BidMessage(vehicle,
+							backers[i], rng.nextDouble(), 5, pickup);
+					vehicle.getCommBids().ensconce(bid);
+					if (rng.nextInt(4) == 0)
+						candidates.add(bid);
+				}
+				TimeLapse time = TimeLapses.at(now, 1000);
+				RoadModel rm = TestVehicles.roadModel(vehicle, position);
+				double[] sums = new double[candidates.size()];
+				double[] parallelSums = new double[candidates.size()];
+				select.score(vehicle, pm, rm, time, candidates, 0,
+						candidates.size(), backers, backers.length,
+						new double[backers.length], sums);
+				select.scoreParallel(vehicle, pm, rm, time, candidates,
+						backers, backers.length, parallelSums);
+				assertArrayEquals(sums, parallelSums, 0);
+				assertEquals(BestFutureSelection.best(sums),
+						BestFutureSelection.best(parallelSums));
+				if (value instanceof TrivialValueStrategy)
+					assertEquals(candidates.isEmpty() ? -1 : 0,
+							BestFutureSelection.best(parallelSums));
+			}
+		}
+	}
+
+	private static Parcel select(SelectStrategy select, SmartVehicle vehicle,
+			Point position, PDPModel pm, TimeLapse time, long seed) {
+		return select.parcel(vehicle, pm,
+				TestVehicles.roadModel(vehicle, position), time,
+				Optional.<Parcel> absent(), vehicle.getCommBids(), seed);
+	}
+
+	private static Point point(Random rng) {
+		return new Point(rng.nextDouble() * 10, rng.nextDouble() * 10);
+	}
+}
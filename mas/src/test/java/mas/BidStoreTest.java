@@ -0,0 +1,207 @@
+package mas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import mas.SmartVehicle.BidMessage;
+import mas.SmartVehicle.BidStore;
+
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.pdp.Parcel;
+
+public class BidStoreTest {
+
+	/**
+	 * Purges and updates find bids through the index they remember, so after
+	 * any mix of operations every bid must be where it says it is and the
+	 * heap must be in order.
+	 */
+	@Test
+	public void heapStaysOrderedAndIndexed() {
+		Random rng = new Random(11);
+		SmartVehicle self = TestVehicles.vehicle(new Point(5, 5));
+		SmartVehicle[] senders = { self,
+				TestVehicles.vehicle(new Point(0, 0)),
+				TestVehicles.vehicle(new Point(9, 3)) };
+		BidStore store = self.new BidStore();
+		List<Parcel> parcels = new ArrayList<Parcel>();
+		for (int i = 0; i < 150; i++) {
+			parcels.add(TestVehicles.parcel(new Point(0, 0), new Point(1, 1)));
+		}
+
+		for (int step = 0; step < 20000; step++) {
+			Parcel parcel = parcels.get(rng.nextInt(parcels.size()));
+			int op = rng.nextInt(20);
+			if (op < 12) {
+				store.ensconce(bid(rng, senders, parcel));
+			} else if (op < 16) {
+				store.purge(parcel);
+			} else if (op < 18) {
+				store.yoink();
+			} else if (op < 19) {
+				store.rekey(step);
+			} else {
+				store.startBatch();
+				for (int i = rng.nextInt(30); i > 0; i--) {
+					store.ensconce(bid(rng, senders,
+							parcels.get(rng.nextInt(parcels.size()))));
+				}
+				store.rekey(step);
+			}
+			assertTrue("heap broken at step " + step, store.isHeap());
+			assertTopBids(store, rng.nextInt(20));
+		}
+	}
+
+	@Test
+	public void equalBidsGoToTheClosestParcel() {
+		SmartVehicle self = TestVehicles.vehicle(new Point(0, 0));
+		BidStore store = self.new BidStore();
+		Parcel far = TestVehicles.parcel(new Point(3, 0), new Point(1, 1));
+		Parcel near = TestVehicles.parcel(new Point(1, 0), new Point(1, 1));
+		store.ensconce(self.new BidMessage(self, far, 7, 5, new Point(3, 0)));
+		store.ensconce(self.new BidMessage(self, near, 7, 5, new Point(1, 0)));
+		assertTrue(store.isHeap());
+		assertEquals(near, store.futures(self, 1).getFirst().getParcel());
+	}
+
+	/**
+	 * A bid made in lap L is first forwarded in lap L + 1 and dropped TTL laps
+	 * later. The wheel has 16 buckets, so TTLs around multiples of 16 land
+	 * in the bucket that is being expired or the one next to it.
+	 */
+	@Test
+	public void bidsExpireInTheirLapAtBucketBoundaries() {
+		SmartVehicle self = TestVehicles.vehicle(new Point(0, 0));
+		int[] ttls = { 0, 1, 14, 15, 16, 17, 31, 32, 33, 48 };
+		for (int ttl : ttls) {
+			for (int start = 0; start < 18; start++) {
+				BidStore store = self.new BidStore();
+				for (int lap = 0; lap < start; lap++) {
+					store.advanceLap();
+				}
+				Parcel parcel = TestVehicles.parcel(new Point(1, 0),
+						new Point(1, 1));
+				store.ensconce(self.new BidMessage(self, parcel, 1, ttl,
+						new Point(1, 0)));
+				for (int lap = 1; lap <= ttl; lap++) {
+					store.advanceLap();
+					assertTrue("TTL " + ttl + " from lap " + start
+							+ " gone after " + lap, store.get(parcel) != null);
+				}
+				store.advanceLap();
+				assertTrue("TTL " + ttl + " from lap " + start + " kept",
+						store.get(parcel) == null);
+			}
+		}
+	}
+
+	/**
+	 * Bids that share a bucket but expire whole turns of the wheel apart.
+	 */
+	@Test
+	public void laterTurnsSurviveTheirBucket() {
+		SmartVehicle self = TestVehicles.vehicle(new Point(0, 0));
+		BidStore store = self.new BidStore();
+		int[] ttls = { 3, 19, 35 };
+		Parcel[] parcels = new Parcel[ttls.length];
+		for (int i = 0; i < ttls.length; i++) {
+			parcels[i] = TestVehicles.parcel(new Point(1, 0), new Point(1, 1));
+			store.ensconce(self.new BidMessage(self, parcels[i], 1, ttls[i],
+					new Point(1, 0)));
+		}
+		for (int lap = 1; lap <= 36; lap++) {
+			store.advanceLap();
+			for (int i = 0; i < ttls.length; i++) {
+				assertEquals("TTL " + ttls[i] + " in lap " + lap,
+						lap <= ttls[i], store.get(parcels[i]) != null);
+			}
+		}
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void bidIsForwardedOncePerRemainingHop() {
+		SmartVehicle self = TestVehicles.vehicle(new Point(0, 0));
+		for (int ttl = 0; ttl <= 33; ttl++) {
+			BidStore store = self.new BidStore();
+			store.ensconce(self.new BidMessage(self, TestVehicles.parcel(
+					new Point(1, 0), new Point(1, 1)), 1, ttl, new Point(1, 0)));
+			int forwarded = 0;
+			for (BidMessage bid = store.yoink(); bid != null; bid = store
+					.yoink()) {
+				assertEquals(ttl - 1 - forwarded, bid.getTtl());
+				forwarded++;
+			}
+			assertEquals("TTL " + ttl, ttl, forwarded);
+			assertEquals(0, store.size());
+		}
+	}
+
+	/**
+	 * Bids expire while a bundle is yoinked, so the ring can wrap around
+	 * before the bundle is full. A bundle must still hold every parcel at
+	 * most once.
+	 */
+	@Test
+	public void bundlesNeverRepeatAParcel() {
+		Random rng = new Random(23);
+		SmartVehicle self = TestVehicles.vehicle(new Point(5, 5));
+		SmartVehicle[] senders = { self, TestVehicles.vehicle(new Point(0, 0)) };
+		List<Parcel> parcels = new ArrayList<Parcel>();
+		for (int i = 0; i < 40; i++) {
+			parcels.add(TestVehicles.parcel(new Point(0, 0), new Point(1, 1)));
+		}
+		BidStore store = self.getCommBids();
+
+		for (int step = 0; step < 5000; step++) {
+			for (int i = rng.nextInt(4); i > 0; i--) {
+				store.ensconce(bid(rng, senders,
+						parcels.get(rng.nextInt(parcels.size()))));
+			}
+			int size = 2 + rng.nextInt(12);
+			int stored = store.size();
+			List<BidMessage> bundle = self.bundle(size);
+			assertTrue(bundle.size() <= Math.min(size, stored));
+			Set<Parcel> bundled = new HashSet<Parcel>();
+			for (BidMessage bid : bundle) {
+				assertTrue("parcel repeated at step " + step,
+						bundled.add(bid.getParcel()));
+			}
+		}
+	}
+
+	private static BidMessage bid(Random rng, SmartVehicle[] senders,
+			Parcel parcel) {
+		SmartVehicle sender = senders[rng.nextInt(senders.length)];
+		// Few distinct values, so ties on the bid are common.
+		double value = rng.nextInt(25);
+		return sender.new BidMessage(sender, parcel, value, rng.nextInt(8),
+				new Point(rng.nextInt(10), rng.nextInt(10)));
+	}
+
+	/**
+	 * futures must return the k best bids of a full scan, best first.
+	 */
+	private static void assertTopBids(BidStore store, int k) {
+		List<Double> all = new ArrayList<Double>();
+		for (BidMessage bid : store.getBids()) {
+			all.add(bid.getBid());
+		}
+		Collections.sort(all, Collections.reverseOrder());
+		List<Double> top = new ArrayList<Double>();
+		for (BidMessage bid : store.futures(null, k)) {
+			top.add(bid.getBid());
+		}
+		assertEquals(all.subList(0, Math.min(k, all.size())), top);
+	}
+}
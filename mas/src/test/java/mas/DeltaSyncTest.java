@@ -0,0 +1,129 @@
+package mas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import mas.SmartVehicle.BidBundle;
+import mas.SmartVehicle.BidMessage;
+
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.communication.CommunicationAPI;
+import rinde.sim.core.model.communication.Message;
+import rinde.sim.core.model.pdp.Parcel;
+
+public class DeltaSyncTest {
+
+	@Test
+	public void unchangedBidsAreNotResent() {
+		SmartVehicle self = TestVehicles.vehicle(new Point(0, 0));
+		SmartVehicle neighbour = TestVehicles.vehicle(new Point(0.1, 0));
+		SmartVehicle other = TestVehicles.vehicle(new Point(9, 9));
+		List<Message> sent = capture(self);
+		Parcel own = bid(self, self, parcel(), 1);
+		Parcel theirs = bid(self, neighbour, parcel(), 1);
+
+		// The neighbour gets everything it did not send itself.
+		assertEquals(Collections.singleton(own), sync(self, neighbour, sent));
+
+		// Nothing changed, nothing is sent.
+		assertTrue(sync(self, neighbour, sent).isEmpty());
+
+		// Only the updated and the new bid are sent.
+		bid(self, self, own, 2);
+		Parcel fresh = bid(self, other, parcel(), 1);
+		Set<Parcel> expected = new HashSet<Parcel>();
+		expected.add(own);
+		expected.add(fresh);
+		assertEquals(expected, sync(self, neighbour, sent));
+		assertTrue(sync(self, neighbour, sent).isEmpty());
+	}
+
+	/**
+	 * A neighbour that was out of range for more than TTL ticks is
+	 * forgotten, and gets all bids again when it returns.
+	 */
+	@Test
+	public void versionVectorsOfLeftNeighboursAreEvicted() {
+		SmartVehicle self = TestVehicles.vehicle(new Point(0, 0));
+		SmartVehicle neighbour = TestVehicles.vehicle(new Point(0.1, 0));
+		List<Message> sent = capture(self);
+		Parcel own = bid(self, self, parcel(), 1);
+		assertEquals(Collections.singleton(own), sync(self, neighbour, sent));
+		assertTrue(self.syncsWith(neighbour));
+
+		for (int tick = 0; tick < self.TTL; tick++) {
+			assertTrue(sync(self, null, sent).isEmpty());
+			assertTrue(self.syncsWith(neighbour));
+		}
+		sync(self, null, sent);
+		assertFalse(self.syncsWith(neighbour));
+
+		assertEquals(Collections.singleton(own), sync(self, neighbour, sent));
+		assertTrue(self.syncsWith(neighbour));
+	}
+
+	/**
+	 * One tick of delta sync with neighbour in range, or none when null. The
+	 * parcels of the bids sent to it.
+	 */
+	private static Set<Parcel> sync(SmartVehicle self, SmartVehicle neighbour,
+			List<Message> sent) {
+		sent.clear();
+		self.syncBids(neighbour == null ? Collections.<SmartVehicle> emptyList()
+				: Collections.singletonList(neighbour));
+		self.flushBids();
+		self.afterTick(null);
+		Set<Parcel> parcels = new HashSet<Parcel>();
+		for (Message message : sent) {
+			List<BidMessage> bids = message instanceof BidBundle ? ((BidBundle) message)
+					.getBids() : Collections.singletonList((BidMessage) message);
+			for (BidMessage bid : bids) {
+				assertTrue(parcels.add(bid.getParcel()));
+			}
+		}
+		return parcels;
+	}
+
+	private static Parcel parcel() {
+		return TestVehicles.parcel(new Point(1, 1), new Point(2, 2));
+	}
+
+	private static Parcel bid(SmartVehicle store, SmartVehicle sender,
+			Parcel parcel, double value) {
+		store.getCommBids().ensconce(
+				sender.new BidMessage(sender, parcel, value, 5, new Point(1, 1)));
+		return parcel;
+	}
+
+	/**
+	 * Give vehicle a communication API that records every message it sends.
+	 */
+	private static List<Message> capture(SmartVehicle vehicle) {
+		final List<Message> sent = new ArrayList<Message>();
+		vehicle.setCommunicationAPI((CommunicationAPI) Proxy.newProxyInstance(
+				DeltaSyncTest.class.getClassLoader(),
+				new Class<?>[] { CommunicationAPI.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						sent.add((Message) args[args.length == 2
+								&& args[1] instanceof Message ? 1 : 0]);
+						return null;
+					}
+				}));
+		return sent;
+	}
+}
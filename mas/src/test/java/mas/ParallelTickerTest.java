@@ -0,0 +1,48 @@
+package mas;
+
+import static org.junit.Assert.assertEquals;
+import mas.Configuration.ExperimentParameters;
+
+import org.junit.Test;
+
+import rinde.sim.pdptw.common.StatisticsDTO;
+import rinde.sim.pdptw.experiment.Experiment;
+import rinde.sim.pdptw.gendreau06.Gendreau06ObjectiveFunction;
+import rinde.sim.pdptw.gendreau06.Gendreau06Parser;
+import rinde.sim.pdptw.gendreau06.Gendreau06Scenario;
+
+public class ParallelTickerTest {
+
+	/**
+	 * The vehicles decide on the state at the start of the tick, with seeds
+	 * drawn beforehand, so the number of threads may not change the outcome.
+	 */
+	@Test
+	public void threadsDoNotChangeTheOutcome() {
+		StatisticsDTO one = run(1);
+		StatisticsDTO four = run(4);
+		assertEquals(one.totalDistance, four.totalDistance, 0);
+		assertEquals(one.pickupTardiness, four.pickupTardiness);
+		assertEquals(one.deliveryTardiness, four.deliveryTardiness);
+		assertEquals(one.overTime, four.overTime);
+		assertEquals(one.simulationTime, four.simulationTime);
+		assertEquals(one.simFinish, four.simFinish);
+	}
+
+	private static StatisticsDTO run(int threads) {
+		String resource = "req_rapide_1_240_24";
+		Gendreau06Scenario scenario = Gendreau06Parser
+				.parser()
+				.addFile(
+						ParallelTickerTest.class.getResourceAsStream("/resources/"
+								+ resource), resource).allowDiversion().parse()
+				.get(0);
+		Configuration configuration = new Configuration(
+				ExperimentParameters.BESTFUTURE_SIMPLE_Defaults,
+				new SmartTuning().withParallelTicks(threads));
+		return Experiment.build(new Gendreau06ObjectiveFunction())
+				.withRandomSeed(123).addConfiguration(configuration)
+				.addScenario(scenario).repeat(1).perform().results.iterator()
+				.next().stats;
+	}
+}
@@ -0,0 +1,72 @@
+package mas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ParcelDigestTest {
+
+	/**
+	 * A vanished parcel that is left out of the gossip is picked up again, so
+	 * the digest may never lose an id.
+	 */
+	@Test
+	public void containsEveryIdItWasMadeOf() {
+		Random rng = new Random(7);
+		for (int round = 0; round < 200; round++) {
+			BitSet ids = new BitSet();
+			int n = rng.nextInt(50);
+			for (int i = 0; i < n; i++) {
+				ids.set(rng.nextInt(1 + rng.nextInt(5000)));
+			}
+			ParcelDigest digest = ParcelDigest.of(ids);
+			assertEquals(ids.cardinality(), digest.size());
+			for (int id = ids.nextSetBit(0); id >= 0; id = ids
+					.nextSetBit(id + 1)) {
+				assertTrue("lost " + id, digest.contains(id));
+			}
+
+			BitSet target = new BitSet();
+			int m = rng.nextInt(50);
+			for (int i = 0; i < m; i++) {
+				target.set(rng.nextInt(5000));
+			}
+			BitSet before = (BitSet) target.clone();
+			boolean gained = digest.mergeInto(target);
+			BitSet union = (BitSet) before.clone();
+			union.or(ids);
+			assertEquals(union, target);
+			assertEquals(!union.equals(before), gained);
+		}
+	}
+
+	@Test
+	public void isNotChangedByItsSource() {
+		BitSet ids = new BitSet();
+		ids.set(3);
+		ids.set(700);
+		ParcelDigest digest = ParcelDigest.of(ids);
+		ids.clear(3);
+		ids.set(42);
+		assertTrue(digest.contains(3));
+		assertTrue(digest.contains(700));
+		assertFalse(digest.contains(42));
+		assertEquals(2, digest.size());
+	}
+
+	@Test
+	public void mergingTwiceGainsNothing() {
+		BitSet ids = new BitSet();
+		ids.set(1);
+		ids.set(64);
+		BitSet target = new BitSet();
+		assertTrue(ParcelDigest.of(ids).mergeInto(target));
+		assertFalse(ParcelDigest.of(ids).mergeInto(target));
+		assertFalse(ParcelDigest.EMPTY.mergeInto(target));
+	}
+}
@@ -0,0 +1,69 @@
+package mas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.pdp.Parcel;
+import rinde.sim.pdptw.common.DefaultParcel;
+import rinde.sim.pdptw.common.ParcelDTO;
+import rinde.sim.util.TimeWindow;
+
+public class ParcelRegistryTest {
+
+	@Test
+	public void idsAreDenseAndKeepTheirData() {
+		ParcelRegistry registry = new ParcelRegistry();
+		// More than one growth of the arrays.
+		DefaultParcel[] parcels = new DefaultParcel[40];
+		for (int i = 0; i < parcels.length; i++) {
+			parcels[i] = new DefaultParcel(new ParcelDTO(new Point(i, 0),
+					new Point(i, 2 * i), new TimeWindow(10 * i, 10 * i + 5),
+					new TimeWindow(20 * i, 20 * i + 5), 1, 0, 3 * i, 4 * i));
+			if (i % 2 == 0)
+				assertEquals(i, registry.add(parcels[i], parcels[i].dto));
+			else
+				registry.register(parcels[i]);
+		}
+		assertEquals(parcels.length, registry.size());
+		for (int i = 0; i < parcels.length; i++) {
+			int id = registry.id(parcels[i]);
+			assertEquals(i, id);
+			assertEquals(i, registry.originX(id), 0);
+			assertEquals(0, registry.originY(id), 0);
+			assertEquals(i, registry.destinationX(id), 0);
+			assertEquals(2 * i, registry.destinationY(id), 0);
+			assertEquals(10 * i, registry.pickupBegin(id));
+			assertEquals(10 * i + 5, registry.pickupEnd(id));
+			assertEquals(20 * i, registry.deliveryBegin(id));
+			assertEquals(20 * i + 5, registry.deliveryEnd(id));
+			assertEquals(3 * i, registry.pickupDuration(id));
+			assertEquals(4 * i, registry.deliveryDuration(id));
+		}
+	}
+
+	@Test
+	public void registeringTwiceKeepsTheId() {
+		ParcelRegistry registry = new ParcelRegistry();
+		DefaultParcel parcel = (DefaultParcel) TestVehicles.parcel(new Point(
+				0, 0), new Point(1, 1));
+		int id = registry.add(parcel, parcel.dto);
+		registry.register(parcel);
+		assertEquals(id, registry.add(parcel, parcel.dto));
+		assertEquals(1, registry.size());
+	}
+
+	@Test
+	public void unregisteredParcelsHaveNoId() {
+		ParcelRegistry registry = new ParcelRegistry();
+		Parcel parcel = TestVehicles.parcel(new Point(0, 0), new Point(1, 1));
+		try {
+			registry.id(parcel);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, registry.size());
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package mas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import mas.PlanningSelection.Plan;
+import mas.PlanningSelection.Stop;
+import mas.SmartVehicle.BidStore;
+
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.pdp.Parcel;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+public class PlanningSelectionTest {
+
+	private static final Predicate<Parcel> PENDING = Predicates.alwaysTrue();
+
+	/**
+	 * insert must put the stop where the route grows the least, as trying
+	 * every position from 'from' on does.
+	 */
+	@Test
+	public void insertsWhereTheRouteGrowsLeast() {
+		Random rng = new Random(13);
+		for (int round = 0; round < 500; round++) {
+			Point start = point(rng);
+			List<Stop> route = new ArrayList<Stop>();
+			for (int i = rng.nextInt(8); i > 0; i--) {
+				route.add(new Stop(null, true, point(rng)));
+			}
+			int from = rng.nextInt(route.size() + 1);
+			Stop stop = new Stop(null, true, point(rng));
+			double best = Double.POSITIVE_INFINITY;
+			for (int i = from; i <= route.size(); i++) {
+				List<Stop> tried = new ArrayList<Stop>(route);
+				tried.add(i, stop);
+				best = Math.min(best, length(start, tried));
+			}
+			int at = PlanningSelection.insert(route, start, from, stop);
+			assertTrue(at >= from);
+			assertSame(stop, route.get(at));
+			assertEquals(best, length(start, route), 1e-9);
+		}
+	}
+
+	@Test
+	public void deliveriesFollowTheirPickups() {
+		Random rng = new Random(17);
+		for (int round = 0; round < 200; round++) {
+			SmartVehicle vehicle = TestVehicles.vehicle(point(rng));
+			Set<Parcel> cargo = new HashSet<Parcel>();
+			for (int i = rng.nextInt(4); i > 0; i--) {
+				cargo.add(TestVehicles.parcel(point(rng), point(rng)));
+			}
+			int bids = rng.nextInt(10);
+			for (int i = 0; i < bids; i++) {
+				bid(vehicle, point(rng), point(rng), rng.nextDouble());
+			}
+			int maxPickups = 1 + rng.nextInt(5);
+			Plan plan = new Plan();
+			Parcel first = repair(new PlanningSelection(maxPickups), plan,
+					vehicle, cargo, PENDING);
+
+			List<Stop> route = plan.route;
+			assertSame(route.isEmpty() ? null : route.get(0).parcel, first);
+			Set<Parcel> pickedUp = new HashSet<Parcel>();
+			for (int i = 0; i < route.size(); i++) {
+				Stop stop = route.get(i);
+				// Every parcel is delivered once, after its pickup.
+				assertEquals(1, deliveriesAfter(route, -1, stop.parcel));
+				if (stop.pickup) {
+					assertFalse(cargo.contains(stop.parcel));
+					assertTrue(pickedUp.add(stop.parcel));
+					assertEquals(1, deliveriesAfter(route, i, stop.parcel));
+				}
+			}
+			assertEquals(Math.min(maxPickups, bids), pickedUp.size());
+			assertEquals(cargo.size() + 2 * pickedUp.size(), route.size());
+		}
+	}
+
+	@Test
+	public void repairDropsLostVanishedAndPickedUpParcels() {
+		SmartVehicle vehicle = TestVehicles.vehicle(new Point(0, 0));
+		BidStore store = vehicle.getCommBids();
+		Parcel[] parcels = new Parcel[4];
+		for (int i = 0; i < parcels.length; i++) {
+			parcels[i] = bid(vehicle, new Point(i + 1, 0), new Point(i + 1, 1),
+					i + 1);
+		}
+		Set<Parcel> cargo = new HashSet<Parcel>();
+		final Set<Parcel> gone = new HashSet<Parcel>();
+		Predicate<Parcel> pending = new Predicate<Parcel>() {
+			@Override
+			public boolean apply(Parcel parcel) {
+				return !gone.contains(parcel);
+			}
+		};
+		PlanningSelection select = new PlanningSelection(4);
+		Plan plan = new Plan();
+		repair(select, plan, vehicle, cargo, pending);
+		assertEquals(8, plan.route.size());
+
+		// Another vehicle outbids us.
+		SmartVehicle other = TestVehicles.vehicle(new Point(9, 9));
+		store.ensconce(other.new BidMessage(other, parcels[0], 100, 5,
+				new Point(1, 0)));
+		repair(select, plan, vehicle, cargo, pending);
+		assertEquals(0, stops(plan, parcels[0]));
+		assertEquals(6, plan.route.size());
+
+		// The first stop vanishes before our bid is purged.
+		Parcel head = plan.route.get(0).parcel;
+		gone.add(head);
+		Parcel next = repair(select, plan, vehicle, cargo, pending);
+		assertEquals(0, stops(plan, head));
+		assertEquals(4, plan.route.size());
+		assertTrue(next != head);
+
+		// Picking up purges our bid and adds the parcel to the cargo.
+		Parcel pickedUp = plan.route.get(0).parcel;
+		store.purge(pickedUp);
+		cargo.add(pickedUp);
+		repair(select, plan, vehicle, cargo, pending);
+		assertEquals(1, stops(plan, pickedUp));
+		assertEquals(1, deliveriesAfter(plan.route, -1, pickedUp));
+		assertEquals(3, plan.route.size());
+	}
+
+	/**
+	 * Without changes to the bids or the cargo, only the first stop is
+	 * checked and the route is kept.
+	 */
+	@Test
+	public void unchangedPlanIsReusedWithoutRepair() {
+		Random rng = new Random(19);
+		SmartVehicle vehicle = TestVehicles.vehicle(new Point(5, 5));
+		for (int i = 0; i < 8; i++) {
+			bid(vehicle, point(rng), point(rng), rng.nextDouble());
+		}
+		final int[] calls = { 0 };
+		Predicate<Parcel> pending = new Predicate<Parcel>() {
+			@Override
+			public boolean apply(Parcel parcel) {
+				calls[0]++;
+				return true;
+			}
+		};
+		Set<Parcel> cargo = new HashSet<Parcel>();
+		PlanningSelection select = new PlanningSelection(4);
+		Plan plan = new Plan();
+		Parcel first = repair(select, plan, vehicle, cargo, pending);
+		List<Stop> route = new ArrayList<Stop>(plan.route);
+
+		calls[0] = 0;
+		assertSame(first, repair(select, plan, vehicle, cargo, pending));
+		assertEquals(1, calls[0]);
+		assertEquals(route, plan.route);
+
+		// A new bid changes the sender version, so the route is repaired.
+		bid(vehicle, point(rng), point(rng), 2);
+		calls[0] = 0;
+		repair(select, plan, vehicle, cargo, pending);
+		assertTrue(calls[0] > 1);
+	}
+
+	private static Parcel repair(PlanningSelection select, Plan plan,
+			SmartVehicle vehicle, Set<Parcel> cargo, Predicate<Parcel> pending) {
+		BidStore store = vehicle.getCommBids();
+		return select.repair(plan, vehicle.getPosition(), cargo,
+				store.senderVersion(vehicle), store.senderParcels(vehicle),
+				store.senderMessages(vehicle), pending);
+	}
+
+	private static Parcel bid(SmartVehicle vehicle, Point pickup,
+			Point destination, double value) {
+		Parcel parcel = TestVehicles.parcel(pickup, destination);
+		vehicle.getCommBids().ensconce(
+				vehicle.new BidMessage(vehicle, parcel, value, 5, pickup));
+		return parcel;
+	}
+
+	private static int stops(Plan plan, Parcel parcel) {
+		int stops = 0;
+		for (Stop stop : plan.route) {
+			if (stop.parcel == parcel)
+				stops++;
+		}
+		return stops;
+	}
+
+	private static int deliveriesAfter(List<Stop> route, int index,
+			Parcel parcel) {
+		int deliveries = 0;
+		for (int i = index + 1; i < route.size(); i++) {
+			if (route.get(i).parcel == parcel && !route.get(i).pickup)
+				deliveries++;
+		}
+		return deliveries;
+	}
+
+	private static double length(Point start, List<Stop> route) {
+		double length = 0;
+		Point previous = start;
+		for (Stop stop : route) {
+			length += Point.distance(previous, stop.position);
+			previous = stop.position;
+		}
+		return length;
+	}
+
+	private static Point point(Random rng) {
+		return new Point(rng.nextDouble() * 10, rng.nextDouble() * 10);
+	}
+}
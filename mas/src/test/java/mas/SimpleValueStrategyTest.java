@@ -0,0 +1,46 @@
+package mas;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+
+public class SimpleValueStrategyTest {
+
+	/**
+	 * Bounded scoring drops candidates on the strength of upperBound, so it
+	 * must hold for every position, not just on average.
+	 */
+	@Test
+	public void valueNeverExceedsUpperBound() {
+		Random rng = new Random(123);
+		for (int i = 0; i < 100000; i++) {
+			int cargoSize = rng.nextInt(6);
+			long now = rng.nextInt(3) == 0 ? 0 : (long) rng.nextInt(1 << 30);
+			double windowStart = rng.nextInt(4) == 0 ? now : rng
+					.nextInt(1 << 30);
+			Point position = new Point(rng.nextDouble() * 10,
+					rng.nextDouble() * 10);
+			Point target = rng.nextInt(8) == 0 ? position : new Point(
+					rng.nextDouble() * 10, rng.nextDouble() * 10);
+			double speed = 1 + rng.nextDouble() * 100;
+			double value = SimpleValueStrategy.value(cargoSize,
+					Point.distance(position, target), speed, now, windowStart);
+			double bound = SimpleValueStrategy.upperBound(cargoSize, now,
+					windowStart);
+			assertTrue(value + " > " + bound + " for cargo " + cargoSize
+					+ " at " + now + " window " + windowStart, value <= bound);
+		}
+	}
+
+	@Test
+	public void boundIsFiniteOnceTheWindowStarted() {
+		double infinity = Double.POSITIVE_INFINITY;
+		assertTrue(SimpleValueStrategy.upperBound(2, 1000, 400) < infinity);
+		assertTrue(SimpleValueStrategy.upperBound(0, 1000, 400) == infinity);
+		assertTrue(SimpleValueStrategy.upperBound(2, 400, 1000) == infinity);
+	}
+}
@@ -0,0 +1,108 @@
+package mas;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.commons.math3.random.MersenneTwister;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.pdp.DefaultPDPModel;
+import rinde.sim.core.model.pdp.PDPModel;
+import rinde.sim.core.model.pdp.Parcel;
+import rinde.sim.core.model.road.RoadModel;
+import rinde.sim.pdptw.common.DefaultParcel;
+import rinde.sim.pdptw.common.ParcelDTO;
+import rinde.sim.pdptw.common.VehicleDTO;
+import rinde.sim.util.TimeWindow;
+
+/**
+ * Smart vehicles outside of a simulation, on a road model that only knows
+ * positions, for tests of the BidStore.
+ */
+final class TestVehicles {
+
+	/**
+	 * All test vehicles and parcels share one registry, as they would in one
+	 * simulation.
+	 */
+	static final ParcelRegistry REGISTRY = new ParcelRegistry();
+	private static int streams = 0;
+
+	private TestVehicles() {
+	}
+
+	static SmartVehicle vehicle(Point position) {
+		return init(new SmartVehicle(dto(position)), position,
+				new DefaultPDPModel());
+	}
+
+	/**
+	 * A vehicle that is registered with pm, so its contents can be read.
+	 */
+	static SmartVehicle vehicle(Point position, SelectStrategy select,
+			ValueStrategy value, PDPModel pm) {
+		SmartVehicle vehicle = new SmartVehicle(dto(position), select, value,
+				0.5, 0.8, 5, 0.5, 0.03, new SmartTuning(),
+				new SmartStatistics());
+		pm.register(vehicle);
+		return init(vehicle, position, pm);
+	}
+
+	private static VehicleDTO dto(Point position) {
+		return new VehicleDTO(position, 1, 1, new TimeWindow(0, Long.MAX_VALUE));
+	}
+
+	private static SmartVehicle init(SmartVehicle vehicle, Point position,
+			PDPModel pm) {
+		vehicle.initRoadPDP(roadModel(vehicle, position), pm);
+		REGISTRY.register(vehicle);
+		vehicle.setRandomStream(streams, new MersenneTwister(streams));
+		streams++;
+		return vehicle;
+	}
+
+	static Parcel parcel(Point pickup, Point destination) {
+		return parcel(pickup, destination, 0);
+	}
+
+	static Parcel parcel(Point pickup, Point destination, long windowStart) {
+		ParcelDTO dto = new ParcelDTO(pickup, destination, new TimeWindow(
+				windowStart, Long.MAX_VALUE), new TimeWindow(windowStart,
+				Long.MAX_VALUE), 0, 0, 0, 0);
+		Parcel parcel = new DefaultParcel(dto);
+		REGISTRY.add(parcel, dto);
+		return parcel;
+	}
+
+	/**
+	 * A road model on which vehicle stands still at position. Other methods
+	 * return nothing.
+	 */
+	static RoadModel roadModel(Object vehicle, Point position) {
+		final Map<Object, Point> positions = new IdentityHashMap<Object, Point>();
+		positions.put(vehicle, position);
+		return (RoadModel) Proxy.newProxyInstance(
+				TestVehicles.class.getClassLoader(),
+				new Class<?>[] { RoadModel.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("getPosition"))
+							return positions.get(args[0]);
+						Class<?> type = method.getReturnType();
+						if (type == boolean.class)
+							return false;
+						if (type == double.class)
+							return 0.0;
+						if (type == int.class)
+							return 0;
+						if (type == long.class)
+							return 0L;
+						return null;
+					}
+				});
+	}
+}
@@ -0,0 +1,130 @@
+package mas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+public class UniformGridTest {
+
+	private static final Predicate<Integer> EVEN = new Predicate<Integer>() {
+		@Override
+		public boolean apply(Integer input) {
+			return input % 2 == 0;
+		}
+	};
+
+	/**
+	 * Radius and nearest queries must give the same answer as a scan of all
+	 * objects, also after moves and removals and for centers and circles that
+	 * reach outside of the occupied cells.
+	 */
+	@Test
+	public void queriesMatchBruteForce() {
+		Random rng = new Random(3);
+		for (double cellSize : new double[] { 0.25, 0.5, 3 }) {
+			UniformGrid<Integer> grid = new UniformGrid<Integer>(cellSize);
+			Map<Integer, Point> positions = new HashMap<Integer, Point>();
+			// The grid tells objects apart by identity.
+			Integer[] objects = new Integer[1000];
+			for (int i = 0; i < objects.length; i++) {
+				objects[i] = new Integer(i);
+				Point position = new Point(rng.nextDouble() * 10 - 2,
+						rng.nextDouble() * 10);
+				positions.put(objects[i], position);
+				grid.put(objects[i], position);
+			}
+			for (int i = 0; i < 300; i++) {
+				Integer object = objects[rng.nextInt(objects.length)];
+				if (rng.nextBoolean()) {
+					assertEquals(positions.remove(object) != null,
+							grid.remove(object));
+				} else {
+					Point position = new Point(rng.nextDouble() * 10,
+							rng.nextDouble() * 10);
+					positions.put(object, position);
+					grid.put(object, position);
+				}
+			}
+			for (int q = 0; q < 300; q++) {
+				Point center = new Point(rng.nextDouble() * 14 - 2,
+						rng.nextDouble() * 14 - 2);
+				double radius = rng.nextDouble() * 3;
+				int k = 1 + rng.nextInt(10);
+				assertEquals(within(positions, center, radius),
+						new HashSet<Integer>(grid.within(center, radius, EVEN)));
+				assertEquals(nearest(positions, center, k),
+						grid.nearest(center, k, EVEN));
+			}
+		}
+	}
+
+	@Test
+	public void pointsOnTheCircleAreOutside() {
+		UniformGrid<Integer> grid = new UniformGrid<Integer>(1);
+		grid.put(1, new Point(2, 0));
+		grid.put(2, new Point(0.5, 0));
+		List<Integer> found = grid.within(new Point(0, 0), 2,
+				Predicates.<Integer> alwaysTrue());
+		assertEquals(Collections.singletonList(2), found);
+	}
+
+	@Test
+	public void removedObjectsAreNotFound() {
+		UniformGrid<Integer> grid = new UniformGrid<Integer>(1);
+		grid.put(1, new Point(0, 0));
+		assertTrue(grid.remove(1));
+		assertFalse(grid.remove(1));
+		assertTrue(grid.nearest(new Point(0, 0), 3,
+				Predicates.<Integer> alwaysTrue()).isEmpty());
+	}
+
+	private static HashSet<Integer> within(Map<Integer, Point> positions,
+			Point center, double radius) {
+		HashSet<Integer> found = new HashSet<Integer>();
+		for (Map.Entry<Integer, Point> entry : positions.entrySet()) {
+			if (EVEN.apply(entry.getKey())
+					&& distance2(entry.getValue(), center) < radius * radius)
+				found.add(entry.getKey());
+		}
+		return found;
+	}
+
+	private static List<Integer> nearest(final Map<Integer, Point> positions,
+			final Point center, int k) {
+		List<Integer> all = new ArrayList<Integer>();
+		for (Integer object : positions.keySet()) {
+			if (EVEN.apply(object))
+				all.add(object);
+		}
+		Collections.sort(all, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(distance2(positions.get(o1), center),
+						distance2(positions.get(o2), center));
+			}
+		});
+		return all.subList(0, Math.min(k, all.size()));
+	}
+
+	private static double distance2(Point a, Point b) {
+		double dx = a.x - b.x;
+		double dy = a.y - b.y;
+		return dx * dx + dy * dy;
+	}
+}
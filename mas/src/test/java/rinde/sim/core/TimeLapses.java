@@ -0,0 +1,20 @@
+package rinde.sim.core;
+
+/**
+ * Time lapses outside of a simulation, TimeLapse can only be made in its own
+ * package.
+ */
+public final class TimeLapses {
+
+	private TimeLapses() {
+	}
+
+	/**
+	 * A time lapse from time until time + step, with all of its time left.
+	 */
+	public static TimeLapse at(long time, long step) {
+		TimeLapse lapse = new TimeLapse();
+		lapse.initialize(time, time + step);
+		return lapse;
+	}
+}